@@ -0,0 +1,100 @@
+package Hydra.Benchmarks;
+
+import com.esotericsoftware.jsonbeans.JsonReader;
+import com.esotericsoftware.jsonbeans.JsonValue;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with {@code -rf json}. Prints every benchmark and parameter set of
+ * the current run with its score, the base score, the change and whether it exceeds both errors, and the
+ * allocation rate per operation if the runs used {@code -prof gc}.
+ */
+public class CompareRuns {
+
+    private static final String ALLOCATION = "\u00B7gc.alloc.rate.norm";
+
+    public static void main(String[] args){
+        if (args.length != 2) {
+            System.err.println("usage: CompareRuns base.json current.json");
+            System.exit(1);
+        }
+
+        Map<String, JsonValue> base = read(args[0]);
+        Map<String, JsonValue> current = read(args[1]);
+
+        for (Map.Entry<String, JsonValue> entry : current.entrySet())
+        {
+            JsonValue now = entry.getValue();
+            JsonValue before = base.get(entry.getKey());
+            JsonValue metric = now.get("primaryMetric");
+
+            double score = metric.getDouble("score");
+            double error = error(metric);
+            String unit = metric.getString("scoreUnit");
+
+            if (before == null) {
+                System.out.println(String.format(Locale.ROOT, "%-90s %12.3f %s (new)", entry.getKey(), score, unit));
+                continue;
+            }
+
+            JsonValue baseMetric = before.get("primaryMetric");
+            double baseScore = baseMetric.getDouble("score");
+            double change = baseScore != 0 ? (score - baseScore) / baseScore * 100 : 0;
+            boolean significant = Math.abs(score - baseScore) > error + error(baseMetric);
+
+            System.out.println(String.format(Locale.ROOT, "%-90s %12.3f -> %12.3f %s %+7.1f%%%s%s",
+                    entry.getKey(), baseScore, score, unit, change, significant ? "" : " (within error)",
+                    allocation(before, now)));
+        }
+
+        for (String key : base.keySet())
+            if (!current.containsKey(key))
+                System.out.println(String.format(Locale.ROOT, "%-90s (removed)", key));
+    }
+
+    // benchmark with its parameters, in the order of the file
+    private static Map<String, JsonValue> read(String file){
+        Map<String, JsonValue> results = new LinkedHashMap<>();
+
+        try {
+            for (JsonValue result = new JsonReader().parse(new File(file)).child(); result != null; result = result.next())
+            {
+                StringBuilder key = new StringBuilder(result.getString("benchmark"));
+                JsonValue params = result.get("params");
+                if (params != null)
+                    for (JsonValue param = params.child(); param != null; param = param.next())
+                        key.append(' ').append(param.name()).append('=').append(param.asString());
+
+                results.put(key.toString(), result);
+            }
+        } catch (Exception ex) {
+            System.err.println("Could not read " + file + ": " + ex.getMessage());
+            System.exit(1);
+        }
+        return results;
+    }
+
+    private static double error(JsonValue metric){
+        double error = metric.getDouble("scoreError", 0);
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    private static String allocation(JsonValue before, JsonValue now){
+        JsonValue baseBytes = secondary(before);
+        JsonValue bytes = secondary(now);
+        if (baseBytes == null || bytes == null)
+            return "";
+
+        return String.format(Locale.ROOT, ", alloc %.1f -> %.1f B/op",
+                baseBytes.getDouble("score"), bytes.getDouble("score"));
+    }
+
+    private static JsonValue secondary(JsonValue result){
+        JsonValue secondary = result.get("secondaryMetrics");
+        return secondary != null ? secondary.get(ALLOCATION) : null;
+    }
+}
@@ -0,0 +1,112 @@
+package Hydra.Network;
+
+import Hydra.Packets.AckPacket;
+import Hydra.Packets.FragmentPacket;
+import Hydra.Packets.Packet;
+import Hydra.Packets.PacketBatch;
+import Hydra.Packets.PacketContainer;
+import Hydra.Packets.PayloadPacket;
+import com.esotericsoftware.kryonet.KryoSerialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of every type sent per datagram, through the KryoSerialization the transports use
+ * and into a direct buffer as the NIO transport writes them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    public enum Type {
+        PACKET,
+        PAYLOAD_PACKET,
+        FRAGMENT,
+        CONTAINER,
+        BATCH,
+        ACK,
+        CHANNEL
+    }
+
+    @Param
+    Type type;
+
+    private final KryoSerialization serialization = new KryoSerialization();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(UDPClient.OBJECT_BUFFER_SIZE);
+    private Object datagram;
+
+    @Setup
+    public void setup(){
+        PacketRegistry.register(serialization.getKryo());
+        datagram = create(type);
+
+        // what decode reads
+        encode();
+    }
+
+    private static Object create(Type type){
+        switch (type){
+            case PAYLOAD_PACKET:
+                return new PayloadPacket(1_000, 12, "Packet Message", 1, 0.1f);
+            case FRAGMENT:
+                return new FragmentPacket(1_000, System.currentTimeMillis(), slice(1_100), 0.1f, 7, 2, 5);
+            case CONTAINER:
+                return container(new PacketContainer(), 60);
+            case BATCH:
+                return container(new PacketBatch(), 40);
+            case ACK:
+                return new AckPacket(1_000, 0xFFFF_FFFFL, System.currentTimeMillis());
+            case CHANNEL:
+                PacketRegistry.ChannelDatagram channel = new PacketRegistry.ChannelDatagram(2);
+                channel.datagram = create(Type.PACKET);
+                return channel;
+            default:
+                return new Packet(1_000, System.currentTimeMillis(), "Packet Message", 0.1f);
+        }
+    }
+
+    // about as many packets as the ordered mode and the coalescer put into one datagram of the default MTU
+    private static PacketContainer container(PacketContainer container, int packets){
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < packets; i++)
+            container.add(new Packet(1_000 + i, now, "Packet Message", 0.1f));
+        return container;
+    }
+
+    private static String slice(int length){
+        StringBuilder slice = new StringBuilder(length);
+        while (slice.length() < length)
+            slice.append("Packet Message ");
+        slice.setLength(length);
+        return slice.toString();
+    }
+
+    @Benchmark
+    public int encode(){
+        buffer.clear();
+        serialization.write(null, buffer, datagram);
+        return buffer.position();
+    }
+
+    @Benchmark
+    public Object decode(){
+        buffer.position(0);
+        return serialization.read(null, buffer);
+    }
+}
@@ -0,0 +1,119 @@
+package Hydra.Network;
+
+import Hydra.Packets.AckPacket;
+import Hydra.Packets.Packet;
+import Hydra.Packets.PacketBatch;
+import Hydra.Packets.PacketContainer;
+import Hydra.Statistics.SimulationStats;
+import com.esotericsoftware.kryonet.KryoSerialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One turn of the sender loop, sendNew and resend, with every datagram serialized, decoded and answered
+ * right away by a stand-in for the loopback server, whose answer is serialized and handed to the engine
+ * again. Measures the engine, the codec and the answer path on one thread without sockets or pacing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendAckBenchmark {
+
+    @Param({"unreliable", "reliable", "ordered"})
+    String mode;
+
+    @Param({"echo", "selective"})
+    String ack;
+
+    // aggregation deadline of the unordered modes, 0 sends every packet alone
+    @Param({"0", "200"})
+    long aggregation;
+
+    // new packets per turn
+    @Param({"1", "16"})
+    int burst;
+
+    private SimulationEngine engine;
+    private final SimulationStats stats = new SimulationStats();
+
+    private final KryoSerialization client = new KryoSerialization();
+    private final KryoSerialization server = new KryoSerialization();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(UDPClient.OBJECT_BUFFER_SIZE);
+
+    private final AckPacket answer = new AckPacket();
+    private boolean selective;
+    private long now;
+
+    @Setup
+    public void setup(){
+        PacketRegistry.register(client.getKryo());
+        PacketRegistry.register(server.getKryo());
+
+        DeliveryMode delivery = DeliveryMode.parse(mode);
+        selective = ack.equals("selective");
+        now = System.currentTimeMillis();
+
+        engine = new SimulationEngine(delivery.reliable, delivery.ordered, 0f, "Packet Message", 1 << 16,
+                UDPClient.DEFAULT_MTU, this::server, null, stats, null, null);
+        engine.setAggregation(aggregation);
+    }
+
+    @Benchmark
+    public int turn(){
+        // the deadline of a batch passes within the turn
+        now++;
+        engine.sendNew(burst, now);
+        engine.resend(now);
+        return engine.getLastAck();
+    }
+
+    // what LoopbackServer does, without its receive windows: every packet is answered once
+    private void server(Object datagram){
+        Object received = roundTrip(server, client, datagram);
+
+        if (received instanceof PacketBatch || received instanceof Packet)
+            answer(received);
+        else if (received instanceof PacketContainer) {
+            PacketContainer container = (PacketContainer) received;
+            for (int i = 0; i < container.getSize(); i++)
+                answer(container.get(i));
+        }
+    }
+
+    private void answer(Object received){
+        if (!selective) {
+            engine.received(roundTrip(client, server, received), now);
+            return;
+        }
+
+        Packet packet = received instanceof PacketBatch ?
+                ((PacketBatch) received).get(((PacketBatch) received).getSize() - 1) : (Packet) received;
+        answer.setLatestSequence(packet.getSequenceNumber());
+        answer.setAckBits(received instanceof PacketBatch ? (1L << (((PacketBatch) received).getSize() - 1)) - 1 : 0);
+        answer.setLaunchTime(packet.getLaunchTime());
+        engine.received(roundTrip(client, server, answer), now);
+    }
+
+    // serialized by one side, decoded by the other
+    private Object roundTrip(KryoSerialization reader, KryoSerialization writer, Object object){
+        buffer.clear();
+        writer.write(null, buffer, object);
+        buffer.flip();
+        return reader.read(null, buffer);
+    }
+}
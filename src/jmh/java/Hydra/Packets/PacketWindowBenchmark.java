@@ -0,0 +1,91 @@
+package Hydra.Packets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Window bookkeeping of the sender at different window sizes. The window is kept at the given fill, so
+ * every operation works on a window as large as a simulation at that rate has. The packets are created
+ * once, the allocation profile only shows what the window itself allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketWindowBenchmark {
+
+    @Param({"1024", "16384", "65536"})
+    int capacity;
+
+    // packets outstanding between the operations
+    @Param({"64", "1000"})
+    int outstanding;
+
+    private PacketWindow window;
+    private Packet[] packets;
+    private int next;
+
+    @Setup
+    public void setup(){
+        window = new PacketWindow(capacity);
+        packets = new Packet[capacity];
+        for (int i = 0; i < capacity; i++)
+            packets[i] = new Packet(i, 0, "Packet Message", 0);
+
+        next = 0;
+        for (int i = 0; i < Math.min(outstanding, capacity - AckPacket.BITS - 1); i++)
+            add();
+    }
+
+    private void add(){
+        Packet packet = packets[next & (capacity - 1)];
+        packet.setSequenceNumber(next++);
+        window.add(packet);
+    }
+
+    // one new packet in, the oldest one acknowledged on its own
+    @Benchmark
+    public boolean insertAndRemove(){
+        add();
+        return window.remove(window.first());
+    }
+
+    // a selective ACK clearing the latest sequence and the 64 before it
+    @Benchmark
+    public int insertAndAcknowledge(){
+        for (int i = 0; i <= AckPacket.BITS; i++)
+            add();
+        return window.acknowledge(next - 1, -1L);
+    }
+
+    // the cumulative echo of the ordered mode cutting 65 packets
+    @Benchmark
+    public int insertAndCut(){
+        int from = next;
+        for (int i = 0; i <= AckPacket.BITS; i++)
+            add();
+        return window.cutBelow(from + AckPacket.BITS + 1);
+    }
+
+    // the resend loops walk the whole window
+    @Benchmark
+    public long iterate(){
+        long sum = 0;
+        for (int seq = window.first(); window.contains(seq); seq = window.next(seq))
+            sum += window.getSentAt(seq);
+        return sum;
+    }
+}
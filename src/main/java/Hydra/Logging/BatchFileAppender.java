@@ -0,0 +1,15 @@
+package Hydra.Logging;
+
+import org.apache.log4j.RollingFileAppender;
+
+/**
+ * RollingFileAppender writing through its buffer, the flusher writes the buffer out once per batch
+ * instead of once per line.
+ */
+public class BatchFileAppender extends RollingFileAppender {
+
+    void flush(){
+        if (qw != null)
+            qw.flush();
+    }
+}
@@ -0,0 +1,112 @@
+package Hydra.Logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring of preallocated LogEvents, any thread claims and publishes slots, one flusher thread takes
+ * them in order. Every slot has a sequence telling whose turn it is: its position while it is free, one
+ * more once the event in it is published. Nothing is allocated or locked on either side.
+ */
+class LogBuffer {
+
+    // a blocked caller retries this often
+    private static final long FULL_WAIT_NANOS = 50_000;
+
+    private final LogEvent[] events;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0;
+
+    private volatile Thread consumer;
+    private volatile boolean consumerWaiting = false;
+
+    // capacity is rounded up to a power of two
+    LogBuffer(int capacity){
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+
+        events = new LogEvent[size];
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+
+        for (int i = 0; i < size; i++)
+        {
+            events[i] = new LogEvent();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * A free slot to fill and {@link #publish}, or null if the buffer stayed full for the given time,
+     * 0 does not wait at all.
+     */
+    LogEvent claim(long waitNanos){
+        long deadline = 0;
+
+        while (true)
+        {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    LogEvent event = events[index];
+                    event.position = position;
+                    return event;
+                }
+            }
+            else if (difference < 0) {
+                // the slot still holds an event from one lap ago
+                if (waitNanos <= 0)
+                    return null;
+                if (deadline == 0)
+                    deadline = System.nanoTime() + waitNanos;
+                else if (System.nanoTime() - deadline > 0)
+                    return null;
+                wakeConsumer();
+                LockSupport.parkNanos(FULL_WAIT_NANOS);
+            }
+            // a positive difference is another caller who claimed the slot first
+        }
+    }
+
+    void publish(LogEvent event){
+        sequences.set((int) (event.position & mask), event.position + 1);
+        if (consumerWaiting)
+            wakeConsumer();
+    }
+
+    private void wakeConsumer(){
+        Thread thread = consumer;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    // the flusher thread only: the next published event, or null
+    LogEvent poll(){
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1)
+            return null;
+        return events[index];
+    }
+
+    // the flusher thread only: hands the slot of the event poll returned back to the callers
+    void release(LogEvent event){
+        event.clear();
+        sequences.set((int) (head & mask), head + events.length);
+        head++;
+    }
+
+    // the flusher thread only: sleeps until an event is published or the time passed
+    void await(long nanos){
+        consumer = Thread.currentThread();
+        consumerWaiting = true;
+        if (poll() == null)
+            LockSupport.parkNanos(this, nanos);
+        consumerWaiting = false;
+    }
+}
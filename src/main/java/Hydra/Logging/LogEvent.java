@@ -0,0 +1,83 @@
+package Hydra.Logging;
+
+import org.apache.log4j.Level;
+
+/**
+ * One preallocated slot of the LogBuffer. The caller only stores references and numbers here, the
+ * message is put together by the flusher.
+ */
+class LogEvent {
+
+    enum Kind {
+        // the message as it is
+        MESSAGE,
+        // the argument goes into the message's {}, or after " | " if it has none
+        ARGUMENT,
+        // the numbers go into the first {}, or after " | " if there are none
+        NUMBERS
+    }
+
+    long position;
+
+    long time;
+    Level level;
+    String thread;
+    Kind kind;
+    Object message;
+    Object argument;
+    long first, second;
+    int numbers;
+    Throwable thrown;
+
+    // drops the references, so the slot keeps nothing alive
+    void clear(){
+        message = null;
+        argument = null;
+        thrown = null;
+        thread = null;
+    }
+
+    void format(StringBuilder into){
+        switch (kind){
+            case MESSAGE:
+                into.append(message);
+                break;
+
+            case ARGUMENT:
+                if (message instanceof String && ((String) message).contains("{}"))
+                    substitute(into, (String) message, 1);
+                else
+                    into.append(message).append(" | ").append(argument);
+                break;
+
+            case NUMBERS:
+                if (message instanceof String && ((String) message).contains("{}"))
+                    substitute(into, (String) message, numbers);
+                else {
+                    into.append(message).append(" | ").append(first);
+                    if (numbers > 1)
+                        into.append(" | ").append(second);
+                }
+                break;
+        }
+    }
+
+    // replaces the first placeholders with the argument, or with the numbers
+    private void substitute(StringBuilder into, String pattern, int count){
+        int start = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int placeholder = pattern.indexOf("{}", start);
+            if (placeholder < 0)
+                break;
+
+            into.append(pattern, start, placeholder);
+            if (kind == Kind.ARGUMENT)
+                into.append(argument);
+            else
+                into.append(i == 0 ? first : second);
+            start = placeholder + 2;
+        }
+        into.append(pattern, start, pattern.length());
+    }
+}
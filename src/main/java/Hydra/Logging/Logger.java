@@ -1,33 +1,186 @@
 package Hydra.Logging;
 
+import org.apache.log4j.Appender;
+import org.apache.log4j.Level;
 import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
 
 import java.util.Date;
+import java.util.Enumeration;
 import java.util.Properties;
-
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Static logging API in front of log4j. Callers only fill a preallocated slot of a ring buffer, without
+ * allocating or waiting for I/O. A flusher thread formats the messages and hands them to the appenders in
+ * batches. Arguments are turned into text on that thread, so they should not change after the call:
+ * {@code info("{} packets", count)} instead of {@code info(count + " packets")}.
+ *
+ * A full buffer drops info messages by default, see {@link #setOverflow}. Errors always wait for a free slot.
+ */
 public class Logger {
 
-    private static org.apache.log4j.Logger logger;
+    public enum Overflow {
+        DROP,
+        BLOCK
+    }
+
+    private static final int BUFFER_SIZE = 1 << 13;
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // a blocking caller waits this long for a slot, then writes the message itself
+    private static final long BLOCK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // the file in the pattern is the one of the caller as log4j saw it before, this class
+    private static final LocationInfo LOCATION = new LocationInfo("Logger.java", Logger.class.getName(), "log", "0");
+
+    private static volatile org.apache.log4j.Logger logger;
+    private static volatile Overflow overflow = Overflow.DROP;
+
+    private static final LogBuffer buffer = new LogBuffer(BUFFER_SIZE);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile Thread flusher;
 
     public static org.apache.log4j.Logger getLogger(){
         return logger;
     }
 
     public static void info(Object ob){
-        logger.info(ob);
+        log(Level.INFO, LogEvent.Kind.MESSAGE, ob, null, 0, 0, 0, null);
     }
 
+    // ob2 goes into the {} of ob, messages without one read "ob | ob2" as they always have
     public static void info(Object ob, Object ob2){
-        logger.info(ob + " | " + ob2);
+        log(Level.INFO, LogEvent.Kind.ARGUMENT, ob, ob2, 0, 0, 0, null);
+    }
+
+    public static void info(String pattern, long value){
+        log(Level.INFO, LogEvent.Kind.NUMBERS, pattern, null, value, 0, 1, null);
+    }
+
+    public static void info(String pattern, long first, long second){
+        log(Level.INFO, LogEvent.Kind.NUMBERS, pattern, null, first, second, 2, null);
     }
 
     public static void setPreMessage(Object ob){
-        logger.info(ob);
+        info(ob);
     }
 
     public static void error(Object message, Exception ex)
     {
-        logger.error(message, ex);
+        log(Level.ERROR, LogEvent.Kind.MESSAGE, message, null, 0, 0, 0, ex);
+    }
+
+    // what callers do when the buffer is full, errors always wait
+    public static void setOverflow(Overflow policy){
+        overflow = policy;
+    }
+
+    private static void log(Level level, LogEvent.Kind kind, Object message, Object argument, long first, long second,
+                            int numbers, Throwable thrown){
+        org.apache.log4j.Logger target = logger;
+        if (target == null || !target.isEnabledFor(level))
+            return;
+
+        boolean block = level == Level.ERROR || overflow == Overflow.BLOCK;
+        Thread thread = flusher;
+        LogEvent event = buffer.claim(block && thread != null && thread.isAlive() ? BLOCK_NANOS : 0);
+
+        if (event != null) {
+            fill(event, level, kind, message, argument, first, second, numbers, thrown);
+            buffer.publish(event);
+        }
+        else if (block) {
+            // the flusher is gone or stuck, the caller writes the message itself instead of waiting forever
+            LogEvent direct = new LogEvent();
+            fill(direct, level, kind, message, argument, first, second, numbers, thrown);
+            if (!append(target, direct, new StringBuilder(256)))
+                dropped.incrementAndGet();
+        }
+        else
+            dropped.incrementAndGet();
+    }
+
+    private static void fill(LogEvent event, Level level, LogEvent.Kind kind, Object message, Object argument,
+                             long first, long second, int numbers, Throwable thrown){
+        event.time = System.currentTimeMillis();
+        event.level = level;
+        event.thread = Thread.currentThread().getName();
+        event.kind = kind;
+        event.message = message;
+        event.argument = argument;
+        event.first = first;
+        event.second = second;
+        event.numbers = numbers;
+        event.thrown = thrown;
+    }
+
+    // the flusher thread, writes what is buffered until the JVM exits
+    private static void flush(){
+        StringBuilder text = new StringBuilder(256);
+
+        while (true)
+        {
+            try {
+                if (!flushBatch(text))
+                    buffer.await(IDLE_NANOS);
+            } catch (Throwable ex) {
+                // a failing flush must not stop the thread, blocking callers would wait for it
+            }
+        }
+    }
+
+    // false if nothing was buffered
+    private static synchronized boolean flushBatch(StringBuilder text){
+        org.apache.log4j.Logger target = logger;
+        int count = 0;
+        LogEvent event;
+
+        while (count < BATCH_SIZE && (event = buffer.poll()) != null)
+        {
+            if (!append(target, event, text))
+                dropped.incrementAndGet();
+
+            buffer.release(event);
+            count++;
+        }
+
+        long lost = dropped.getAndSet(0);
+        if (lost > 0)
+            target.warn(lost + " log messages dropped, the log buffer was full or they could not be written");
+
+        if (count > 0)
+            flushAppenders();
+        return count > 0;
+    }
+
+    // false if formatting the message or an appender failed, the message is lost then
+    private static boolean append(org.apache.log4j.Logger target, LogEvent event, StringBuilder text){
+        try {
+            text.setLength(0);
+            event.format(text);
+
+            target.callAppenders(new LoggingEvent(org.apache.log4j.Logger.class.getName(), target, event.time,
+                    event.level, text.toString(), event.thread,
+                    event.thrown != null ? new ThrowableInformation(event.thrown) : null, null, LOCATION, null));
+            return true;
+        } catch (Throwable ex) {
+            return false;
+        }
+    }
+
+    private static void flushAppenders(){
+        for (Enumeration<?> appenders = org.apache.log4j.Logger.getRootLogger().getAllAppenders();
+             appenders.hasMoreElements();)
+        {
+            Appender appender = (Appender) appenders.nextElement();
+            if (appender instanceof BatchFileAppender)
+                ((BatchFileAppender) appender).flush();
+        }
     }
 
     public static void initialize() {
@@ -39,8 +192,10 @@ public class Logger {
         properties.setProperty("log4j.appender.stdout.layout", "org.apache.log4j.PatternLayout");
         properties.setProperty("log4j.appender.stdout.layout.ConversionPattern", "%d{yyyy/MM/dd HH:mm:ss.SSS} [%5p] %t (%F) - %m%n");
 
-        properties.setProperty("log4j.appender.MyFile", "org.apache.log4j.RollingFileAppender");
+        // buffered, the flusher writes it out after every batch
+        properties.setProperty("log4j.appender.MyFile", BatchFileAppender.class.getName());
         properties.setProperty("log4j.appender.MyFile.File", new Date().getTime() + "_RUDP_Client.log");
+        properties.setProperty("log4j.appender.MyFile.BufferedIO", "true");
         properties.setProperty("log4j.appender.MyFile.MaxFileSize", "100000KB");
         properties.setProperty("log4j.appender.MyFile.MaxBackupIndex", "1");
         properties.setProperty("log4j.appender.MyFile.layout", "org.apache.log4j.PatternLayout");
@@ -50,15 +205,33 @@ public class Logger {
 
         PropertyConfigurator.configure(properties);
 
-        logger = org.apache.log4j.Logger.getLogger("R-UDP Client Log");
+        org.apache.log4j.Logger target = org.apache.log4j.Logger.getLogger("R-UDP Client Log");
 
-        logger.fatal("This is a FATAL message.");
-        logger.error("This is an ERROR message.");
-        logger.warn("This is a WARN message.");
-        info("This is an INFO message.");
-        logger.debug("This is a DEBUG message.");
-        logger.trace("This is a TRACE message.");
-    }
-}
+        target.fatal("This is a FATAL message.");
+        target.error("This is an ERROR message.");
+        target.warn("This is a WARN message.");
+        target.info("This is an INFO message.");
+        target.debug("This is a DEBUG message.");
+        target.trace("This is a TRACE message.");
 
+        startFlusher(target);
+    }
 
+    private static synchronized void startFlusher(org.apache.log4j.Logger target){
+        logger = target;
+        if (flusher != null)
+            return;
+
+        flusher = new Thread(Logger::flush, "Log flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        // what is still buffered at exit is written by the hook
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            StringBuilder text = new StringBuilder(256);
+            boolean flushed = true;
+            while (flushed)
+                flushed = flushBatch(text);
+        }, "Log shutdown"));
+    }
+}
@@ -0,0 +1,53 @@
+package Hydra.Network;
+
+/**
+ * Additive increase of the rate per RTT while packets are acknowledged, multiplicative decrease on loss,
+ * at most once per RTT so that one burst of losses counts as one congestion event.
+ */
+class AimdController implements CongestionController {
+
+    // packets per second gained per RTT
+    private static final double ADDITIVE_INCREASE = 10;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double MIN_RATE = 1;
+    private static final long INITIAL_RTT = 100;
+
+    private double rate;
+    private double ceiling;
+    private long rtt = INITIAL_RTT;
+    private long recoveryEnd = Long.MIN_VALUE;
+
+    AimdController(double ceiling){
+        this.ceiling = ceiling;
+        this.rate = ceiling;
+    }
+
+    @Override
+    public synchronized void onAck(int acknowledged, long rtt, long now){
+        this.rtt = Math.max(1, rtt);
+
+        // acknowledgements expected per RTT at the current rate share the increase
+        double perRtt = Math.max(1, rate * this.rtt / 1_000d);
+        rate = Math.min(ceiling, rate + ADDITIVE_INCREASE * acknowledged / perRtt);
+    }
+
+    @Override
+    public synchronized void onLoss(int lost, long now){
+        if(now < recoveryEnd)
+            return;
+
+        rate = Math.max(MIN_RATE, rate * DECREASE_FACTOR);
+        recoveryEnd = now + rtt;
+    }
+
+    @Override
+    public synchronized void setCeiling(double packetsPerSecond){
+        ceiling = packetsPerSecond;
+        rate = Math.min(rate, ceiling);
+    }
+
+    @Override
+    public synchronized double getRate(){
+        return rate;
+    }
+}
@@ -1,17 +1,23 @@
 package Hydra.Network;
 
 import Hydra.Generic.NetworkListener;
+import Hydra.Statistics.RttEstimator;
+import Hydra.Statistics.RttHistogram;
+import Hydra.Statistics.RttStats;
+import Hydra.Statistics.SimulationStats;
 import Hydra.Utils.GUITextUtils;
+import javafx.application.Platform;
 import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.Scene;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.XYChart;
+import javafx.scene.control.Tooltip;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 
 import static Hydra.Network.ConnectionState.DISCONNECTED;
@@ -25,6 +31,10 @@ public class ApplicationManager implements NetworkListener{
 
     private final UDPClient udpClient;
 
+    // the replay shows its own stats instead of the client's
+    private CaptureReplay replay;
+    private SimulationStats shownStats;
+
     private final EventHandler<ActionEvent> connectHandler, disconnectHandler;
     private final EventHandler<ActionEvent> startHandler, stopHandler;
 
@@ -32,7 +42,8 @@ public class ApplicationManager implements NetworkListener{
     private LineChart.Series<Integer, Integer> sequenceSeries;
 
     // simulation
-    private final ArrayList<Long> rtts = new ArrayList<>();
+    private final RttHistogram recentRTT = new RttHistogram();
+    private final Tooltip rttTooltip = new Tooltip();
 
     private long nextLostSeriesUpdate;
     private int currentSecond;
@@ -52,7 +63,6 @@ public class ApplicationManager implements NetworkListener{
     private long timePassed;
     private int lostThisSecond;
     private long timeNow;
-    private long avgRTT;
 
     ApplicationManager(Stage stage, Controller widgets)
     {
@@ -67,12 +77,14 @@ public class ApplicationManager implements NetworkListener{
                     ApplicationManager.this.udpClient.stopSimulation();
                     ApplicationManager.this.udpClient.stop();
                 }
+                stopReplay();
             }
         });
 
         this.widgets = widgets;
 
-        this.udpClient = new UDPClient(ApplicationManager.this);
+        this.udpClient = new UDPClient(ApplicationManager.this, Platform::runLater);
+        this.shownStats = udpClient.getStats();
         new Thread(udpClient).start();
 
         connectHandler = event -> {
@@ -133,7 +145,11 @@ public class ApplicationManager implements NetworkListener{
 
         });
 
+        widgets.congestionChoice.getItems().setAll(CongestionControl.values());
+        widgets.congestionChoice.setValue(CongestionControl.NONE);
+
         widgets.lostPerSecondChart.setCreateSymbols(false);
+        widgets.pingLabel.setTooltip(rttTooltip);
 
         widgets.packetsPerSecond.valueProperty().addListener((ObservableValue<? extends Number> observable, Number oldValue, Number newValue) -> {
             udpClient.setPacketsPerSec(newValue.intValue());
@@ -149,6 +165,7 @@ public class ApplicationManager implements NetworkListener{
 
         switch (state){
             case CONNECTED:
+                stopReplay();
                 clearSimulation();
                 widgets.serverAddressTF.setDisable(true);
                 widgets.connectButton.setText("Disconnect");
@@ -184,7 +201,39 @@ public class ApplicationManager implements NetworkListener{
         widgets.statsPane.setDisable(disable);
     }
 
+    // records every simulation into the file, see EventCapture
+    void setCapture(Path path){
+        udpClient.setCapture(path);
+    }
+
+    /**
+     * Plays a capture into the stats and charts, speed 1 at the pace it was recorded. The rest of the
+     * window stays disabled until a connection is made, which ends the replay.
+     */
+    void replay(Path path, double speed){
+        stopReplay();
+        clearSimulation();
+
+        replay = new CaptureReplay(path, speed, this, Platform::runLater);
+        shownStats = replay.getStats();
+        widgets.statsPane.setDisable(false);
+        GUITextUtils.animateTextAndColor(widgets.connectionInfoLabel, "replay", "37ad68");
+
+        Thread thread = new Thread(replay, "Capture replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void stopReplay(){
+        if(replay != null) {
+            replay.stop();
+            replay = null;
+        }
+        shownStats = udpClient.getStats();
+    }
+
     private void startSimulation(){
+        stopReplay();
         clearSimulation();
 
         // getting input
@@ -206,7 +255,8 @@ public class ApplicationManager implements NetworkListener{
                 ordered,
                 pps,
                 extraLoss,
-                message);
+                message,
+                widgets.congestionChoice.getValue());
 
         widgets.startButton.setOnAction(stopHandler);
     }
@@ -273,16 +323,33 @@ public class ApplicationManager implements NetworkListener{
 
     @Override
     public void received(int sequence, long time) {
-        if(rtts.size() > 10){rtts.remove(0);}
-        rtts.add(time);
+        // samples are aggregated by the simulation statistics, see updateRTT
     }
 
     @Override
     public void updateRTT(){
-        if(timeNow > nextRTTUpdate && rtts.size() > 0){
+        RttStats rtt = shownStats.getRtt();
+        RttHistogram total = rtt.getTotal();
+
+        if(timeNow > nextRTTUpdate && total.getCount() > 0){
             nextRTTUpdate += RTTUpdateDelay;
-            avgRTT = rtts.stream().mapToLong(p -> p).sum() / rtts.size();
-            widgets.pingLabel.setText(String.valueOf(avgRTT + " ms"));
+
+            RttEstimator estimator = rtt.getEstimator();
+            RttHistogram recent = rtt.window(recentRTT);
+
+            widgets.pingLabel.setText(String.format("%d ms (p99 %d)",
+                    estimator.getSmoothedRtt(), recent.getValueAtPercentile(99)));
+
+            rttTooltip.setText(String.format(
+                    "SRTT %d ms, RTTVAR %d ms%n" +
+                    "last %d s: p50 %d, p90 %d, p99 %d, max %d ms%n" +
+                    "whole run: p50 %d, p90 %d, p99 %d, max %d ms",
+                    estimator.getSmoothedRtt(), estimator.getRttVariance(),
+                    rtt.getWindowMillis() / 1000,
+                    recent.getValueAtPercentile(50), recent.getValueAtPercentile(90),
+                    recent.getValueAtPercentile(99), recent.getMax(),
+                    total.getValueAtPercentile(50), total.getValueAtPercentile(90),
+                    total.getValueAtPercentile(99), total.getMax()));
         }
     }
 
@@ -300,11 +367,11 @@ public class ApplicationManager implements NetworkListener{
         widgets.lostLabel.setText("0");
         widgets.timeLabel.setText("0");
 
-        rtts.clear();
+        rttTooltip.setText("");
         timeNow = System.currentTimeMillis();
         startTime = timeNow;
         nextLostSeriesUpdate = timeNow;
-        nextLostSeriesUpdate = timeNow;
+        nextRTTUpdate = timeNow;
         nextSequenceUpdate = timeNow;
 
         currentSecond = previousLost = 0;
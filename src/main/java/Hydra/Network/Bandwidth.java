@@ -0,0 +1,43 @@
+package Hydra.Network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bandwidth cap with a drop-tail queue, the stage of an Impairment the channels of one connection share,
+ * so together they get the configured rate. Thread safe, every channel sends from a thread of its own.
+ */
+class Bandwidth {
+
+    // what departure returns for a datagram the full queue drops
+    static final long DROPPED = Long.MIN_VALUE;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long bytesPerSecond;
+    private final long maxQueue;
+
+    private long linkFree;
+
+    Bandwidth(ImpairmentConfig config, Clock clock){
+        this.bytesPerSecond = config.getBandwidthKbit() * 1000 / 8;
+        this.maxQueue = (long) (config.getMaxQueueMs() * NANOS_PER_MILLI);
+        this.linkFree = clock.nanos();
+    }
+
+    /**
+     * Time the datagram of the given size handed in now has left the link, or DROPPED if it waited longer
+     * than the queue allows. Without a cap it leaves right away.
+     */
+    synchronized long departure(int size, long now){
+        if (bytesPerSecond <= 0)
+            return now;
+
+        long start = Math.max(now, linkFree);
+        if (start - now > maxQueue)
+            return DROPPED;
+
+        linkFree = start + size * NANOS_PER_SECOND / bytesPerSecond;
+        return linkFree;
+    }
+}
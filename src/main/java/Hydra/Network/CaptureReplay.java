@@ -0,0 +1,155 @@
+package Hydra.Network;
+
+import Hydra.Generic.NetworkListener;
+import Hydra.Logging.Logger;
+import Hydra.Statistics.SimulationStats;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays an {@link EventCapture} back into a NetworkListener: the records rebuild the counters and gauges
+ * of a SimulationStats at the pace they were recorded, sped up by the given factor, and a MetricsPublisher
+ * hands them to the listener as during the simulation.
+ */
+class CaptureReplay implements Runnable {
+
+    // the replay sleeps once it is this far ahead of the capture
+    private static final long MIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Path path;
+    private final double speed;
+    private final SimulationStats stats = new SimulationStats();
+    private final MetricsPublisher metrics;
+
+    // gauges as they were at the last record
+    private volatile int windowSize, clientSequence, serverSequence;
+
+    // capture time of the last record and when it was played, the RTT window slides on from there
+    private volatile long recordTime = Long.MIN_VALUE;
+    private volatile long playedAt;
+
+    private volatile boolean running = true;
+
+    // speed 1 plays the capture as it was recorded, 10 ten times as fast
+    CaptureReplay(Path path, double speed, NetworkListener listener, Executor callbacks){
+        this.path = path;
+        this.speed = speed > 0 ? speed : 1;
+        this.metrics = new MetricsPublisher(listener, callbacks, stats);
+
+        stats.reset();
+        stats.setGauges(() -> windowSize, () -> clientSequence, () -> serverSequence, () -> 0);
+        stats.getRtt().setTime(this::captureTime);
+    }
+
+    // the time of the capture the replay is at
+    private long captureTime(){
+        long time = recordTime;
+        if (time == Long.MIN_VALUE)
+            return time;
+        return time + (long) (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - playedAt) * speed);
+    }
+
+    @Override
+    public void run(){
+        long started = System.nanoTime();
+        long firstTime = -1;
+        long records = 0;
+        Logger.info("Capture replay {}", path);
+
+        try {
+            for (int index = 0; running; index++)
+            {
+                Path file = EventCapture.segmentPath(path, index);
+                if (!Files.exists(file))
+                    break;
+
+                MappedByteBuffer segment = map(file);
+                if (index == 0)
+                    metrics.start((segment.getInt(12) & EventCapture.FLAG_RELIABLE) != 0);
+
+                for (int offset = EventCapture.HEADER_SIZE; running && offset + EventCapture.RECORD_SIZE
+                        <= segment.limit(); offset += EventCapture.RECORD_SIZE)
+                {
+                    EventCapture.Type type = EventCapture.Type.of(segment.getInt(offset + 8));
+                    if (type == null)
+                        break;
+
+                    long time = segment.getLong(offset);
+                    if (firstTime < 0)
+                        firstTime = time;
+
+                    // waits until the record is due at the replay speed
+                    long due = started + (long) (TimeUnit.MILLISECONDS.toNanos(time - firstTime) / speed);
+                    long wait = due - System.nanoTime();
+                    if (wait > MIN_WAIT_NANOS)
+                        LockSupport.parkNanos(wait);
+
+                    playedAt = System.nanoTime();
+                    recordTime = time;
+                    apply(type, time, segment.getInt(offset + 12), segment.getInt(offset + 16));
+                    windowSize = segment.getInt(offset + 20);
+                    records++;
+                }
+            }
+        } catch (IOException ex) {
+            Logger.error("Capture replay " + path, ex);
+        }
+
+        metrics.stop();
+        Logger.info("Capture replay finished: {} records", records);
+    }
+
+    private void apply(EventCapture.Type type, long time, int sequence, int value){
+        switch (type){
+            case SEND:
+                clientSequence = Math.max(clientSequence, sequence + 1);
+                stats.incrementSent();
+                break;
+            case RETRANSMIT:
+                stats.incrementSent();
+                break;
+            case LOST:
+                stats.incrementLost();
+                break;
+            case ACK:
+                serverSequence = sequence;
+                stats.addConfirmed(value);
+                break;
+            case RTT:
+                stats.recordRtt(value, time);
+                metrics.publishRTT(sequence, value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (segment.limit() < EventCapture.HEADER_SIZE || segment.getInt(0) != EventCapture.MAGIC)
+                throw new IOException("Not an event capture: " + file);
+            if (segment.getInt(4) != EventCapture.VERSION || segment.getInt(8) != EventCapture.RECORD_SIZE)
+                throw new IOException("Unsupported capture version " + segment.getInt(4) + ": " + file);
+            return segment;
+        }
+    }
+
+    // stats of the replayed channel, the GUI reads its RTT from them
+    SimulationStats getStats(){
+        return stats;
+    }
+
+    void stop(){
+        running = false;
+    }
+}
@@ -0,0 +1,25 @@
+package Hydra.Network;
+
+/**
+ * Time source of the sender, its impairment and the loopback receive path. The system clock runs them in
+ * real time, the discrete event simulation advances a VirtualClock itself.
+ */
+interface Clock {
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanos(){
+            return System.nanoTime();
+        }
+
+        @Override
+        public long millis(){
+            return System.currentTimeMillis();
+        }
+    };
+
+    // for intervals only, like System.nanoTime
+    long nanos();
+
+    long millis();
+}
@@ -0,0 +1,102 @@
+package Hydra.Network;
+
+import Hydra.Packets.Packet;
+import Hydra.Packets.PacketBatch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Send stage of a SimulationEngine in front of its impairment, packing the single packets of the unordered
+ * modes into MTU bounded PacketBatches. A batch goes out when the next packet would not fit or once its first
+ * packet waited for the deadline, a lone packet is sent as it is. Without a deadline every datagram passes
+ * straight through.
+ *
+ * The impairment sees the batch as the one datagram it is, so losing it loses every packet in it. Those are
+ * handed to the dropped callback, as their send returned before the batch went out.
+ *
+ * Packets are copied, as the engine reuses its own. Sender thread only.
+ */
+class Coalescer {
+
+    private final Impairment link;
+    private final Clock clock;
+    private final Consumer<Packet> dropped;
+
+    private volatile long deadline = 0;
+    private volatile int mtu;
+
+    private final PacketBatch batch = new PacketBatch();
+    private final PacketCopies copies = new PacketCopies();
+    private int size;
+    private long due;
+
+    Coalescer(Impairment link, int mtu, Clock clock, Consumer<Packet> dropped){
+        this.link = link;
+        this.clock = clock;
+        this.mtu = mtu;
+        this.dropped = dropped;
+    }
+
+    /**
+     * Hands a datagram to the impairment or a packet to the open batch. Returns false if it is lost, a batched
+     * packet counts as sent until its batch is.
+     */
+    boolean send(Object object){
+        if (deadline <= 0 || !(object instanceof Packet)) {
+            // containers and control messages keep their place behind the batched packets
+            flushBatch();
+            return link.send(object);
+        }
+
+        Packet packet = (Packet) object;
+        int packetSize = PacketRegistry.maxPacketSize(packet);
+
+        if (batch.getSize() > 0 && size + packetSize > mtu)
+            flushBatch();
+
+        if (batch.getSize() == 0) {
+            size = PacketRegistry.CONTAINER_OVERHEAD;
+            due = clock.nanos() + deadline;
+        }
+
+        batch.add(copies.copy(packet, batch.getSize()));
+        size += packetSize;
+        return true;
+    }
+
+    /**
+     * Sends the batch if it waited for the deadline.
+     */
+    void flush(){
+        if (batch.getSize() > 0 && clock.nanos() - due >= 0)
+            flushBatch();
+    }
+
+    // time until the batch is due, Long.MAX_VALUE if none is open
+    long nanosUntilNext(){
+        return batch.getSize() == 0 ? Long.MAX_VALUE : Math.max(0, due - clock.nanos());
+    }
+
+    private void flushBatch(){
+        int count = batch.getSize();
+        if (count == 0)
+            return;
+
+        if (!link.send(count == 1 ? batch.get(0) : batch)) {
+            for (int i = 0; i < count; i++)
+                dropped.accept(batch.get(i));
+        }
+
+        batch.clear();
+    }
+
+    // longest a packet waits for others to share its datagram, 0 sends every packet alone
+    void setDeadline(long micros){
+        this.deadline = TimeUnit.MICROSECONDS.toNanos(Math.max(0, micros));
+    }
+
+    void setMtu(int mtu){
+        this.mtu = mtu;
+    }
+}
@@ -0,0 +1,30 @@
+package Hydra.Network;
+
+
+public enum CongestionControl {
+    NONE("Fixed rate"),
+    AIMD("AIMD"),
+    DELAY_BASED("Delay based");
+
+    private final String displayName;
+
+    CongestionControl(String displayName){
+        this.displayName = displayName;
+    }
+
+    CongestionController create(double ceiling){
+        switch (this){
+            case AIMD:
+                return new AimdController(ceiling);
+            case DELAY_BASED:
+                return new DelayBasedController(ceiling);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public String toString(){
+        return displayName;
+    }
+}
@@ -0,0 +1,17 @@
+package Hydra.Network;
+
+/**
+ * Drives the pacing rate from acknowledgement, loss and RTT signals. The sender and the receive thread
+ * both report to it, implementations synchronize themselves.
+ */
+interface CongestionController {
+
+    void onAck(int acknowledged, long rtt, long now);
+
+    void onLoss(int lost, long now);
+
+    // upper limit set by the user, the rate never goes above it
+    void setCeiling(double packetsPerSecond);
+
+    double getRate();
+}
@@ -81,6 +81,9 @@ public class Controller implements Initializable {
     @FXML
     public CheckBox lossCheckbox;
 
+    @FXML
+    public ChoiceBox<CongestionControl> congestionChoice;
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {}
 }
@@ -0,0 +1,60 @@
+package Hydra.Network;
+
+/**
+ * LEDBAT style controller: keeps the queuing delay, the RTT above the lowest one seen, near a target.
+ * The rate grows while the delay is below the target and shrinks above it, loss still halves it.
+ */
+class DelayBasedController implements CongestionController {
+
+    private static final long TARGET_DELAY = 25;
+
+    // share of the rate changed per RTT when the delay is one target off
+    private static final double GAIN = 0.1;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double MIN_RATE = 1;
+
+    private double rate;
+    private double ceiling;
+    private long baseRtt = Long.MAX_VALUE;
+    private long rtt = TARGET_DELAY;
+    private long recoveryEnd = Long.MIN_VALUE;
+
+    DelayBasedController(double ceiling){
+        this.ceiling = ceiling;
+        this.rate = ceiling;
+    }
+
+    @Override
+    public synchronized void onAck(int acknowledged, long rtt, long now){
+        this.rtt = Math.max(1, rtt);
+        baseRtt = Math.min(baseRtt, this.rtt);
+
+        long queuingDelay = this.rtt - baseRtt;
+        double offTarget = Math.max(-1, (TARGET_DELAY - queuingDelay) / (double) TARGET_DELAY);
+
+        double perRtt = Math.max(1, rate * this.rtt / 1_000d);
+        double next = rate + GAIN * rate * offTarget * acknowledged / perRtt;
+
+        rate = Math.max(MIN_RATE, Math.min(ceiling, next));
+    }
+
+    @Override
+    public synchronized void onLoss(int lost, long now){
+        if(now < recoveryEnd)
+            return;
+
+        rate = Math.max(MIN_RATE, rate * DECREASE_FACTOR);
+        recoveryEnd = now + rtt;
+    }
+
+    @Override
+    public synchronized void setCeiling(double packetsPerSecond){
+        ceiling = packetsPerSecond;
+        rate = Math.min(rate, ceiling);
+    }
+
+    @Override
+    public synchronized double getRate(){
+        return rate;
+    }
+}
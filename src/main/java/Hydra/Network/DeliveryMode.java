@@ -0,0 +1,37 @@
+package Hydra.Network;
+
+/**
+ * Delivery guarantee of one channel. The sequenced mode is unreliable, its receiver drops packets older than
+ * the newest one it got instead of delivering them late.
+ */
+enum DeliveryMode {
+    UNRELIABLE("unreliable", false, false),
+    SEQUENCED("sequenced", false, false),
+    RELIABLE("reliable", true, false),
+    ORDERED("ordered", true, true);
+
+    private final String label;
+    final boolean reliable, ordered;
+
+    DeliveryMode(String label, boolean reliable, boolean ordered){
+        this.label = label;
+        this.reliable = reliable;
+        this.ordered = ordered;
+    }
+
+    static DeliveryMode of(boolean reliable, boolean ordered){
+        return ordered ? ORDERED : reliable ? RELIABLE : UNRELIABLE;
+    }
+
+    static DeliveryMode parse(String label){
+        for (DeliveryMode mode : values())
+            if (mode.label.equalsIgnoreCase(label))
+                return mode;
+        throw new IllegalArgumentException("Unknown mode " + label);
+    }
+
+    @Override
+    public String toString(){
+        return label;
+    }
+}
@@ -0,0 +1,320 @@
+package Hydra.Network;
+
+import Hydra.Statistics.SimulationStats;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.nio.file.Path;
+import java.util.PriorityQueue;
+
+/**
+ * Runs the channels of a simulation against the loopback receive path on one thread in virtual time.
+ * Every send turn and every answer is an event, time jumps from one event to the next, so hours of
+ * traffic take seconds and a run with the same options and seed gives the same results every time.
+ *
+ * Datagrams still go through Kryo in both directions, but nothing crosses a socket: the receive path
+ * takes them at the time they leave the impairment, answers go back through an impairment of their own
+ * with the same settings and a seed of its own. The impairment's latency, jitter and bandwidth are what
+ * the path costs each way, the loss chance of the simulation only applies to the packets.
+ */
+class DiscreteEventSimulation {
+
+    private static final int WINDOW_CAPACITY = 1 << 16;
+
+    // added to the seeds of the way back, so they never meet the ones of the channels
+    private static final long RETURN_SEED = 1L << 32;
+
+    private final VirtualClock clock = new VirtualClock();
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long scheduled = 0;
+
+    // Kryo decodes into reused instances, so every direction and side has its own
+    private final Kryo clientWrite = new Kryo(), serverRead = new Kryo();
+    private final Kryo serverWrite = new Kryo(), clientRead = new Kryo();
+    private final Output output = new Output(UDPClient.OBJECT_BUFFER_SIZE);
+    private final Input input = new Input();
+
+    private Sender[] senders = new Sender[0];
+    private LoopbackChannel[] receivers = new LoopbackChannel[0];
+    private ReturnPath[] returns = new ReturnPath[0];
+
+    private int mtu = UDPClient.DEFAULT_MTU;
+    private int burstSize = 0;
+    private boolean selectiveAck = false;
+    private ImpairmentConfig impairment = null;
+    private boolean payloadDictionary = false;
+    private long aggregationMicros = 0;
+    private Path capturePath = null;
+    private EventCapture capture = null;
+
+    DiscreteEventSimulation(){
+        PacketRegistry.register(clientWrite);
+        PacketRegistry.register(serverRead);
+        PacketRegistry.register(serverWrite);
+        PacketRegistry.register(clientRead);
+    }
+
+    void setSelectiveAck(boolean selective){
+        this.selectiveAck = selective;
+    }
+
+    // a seed of 0 runs with seed 1, every channel draws from its own generator
+    void setImpairment(ImpairmentConfig impairment){
+        this.impairment = impairment;
+    }
+
+    void setPayloadDictionary(boolean enabled){
+        this.payloadDictionary = enabled;
+    }
+
+    void setAggregation(long micros){
+        this.aggregationMicros = micros;
+    }
+
+    // records the first channel in virtual time, a replay plays it back at that pace
+    void setCapture(Path path){
+        this.capturePath = path;
+    }
+
+    void setMtu(int mtu){
+        this.mtu = mtu;
+    }
+
+    // packets a sender may send back to back after a stall, 0 for automatic
+    void setBurstSize(int packets){
+        this.burstSize = packets;
+    }
+
+    /**
+     * Sets up one sender and one receiver per mode, like the handshake with the loopback server would, and
+     * schedules the first send turns. Nothing runs before {@link #advance}.
+     */
+    void start(DeliveryMode[] modes, int[] packetsPerSec, float loseChance, String msg,
+               CongestionControl congestionControl)
+    {
+        PacketRegistry.PayloadDictionary dictionary = payloadDictionary && Fragmenter.fits(msg, mtu) ?
+                new PacketRegistry.PayloadDictionary(msg) : null;
+
+        // the channels share the bandwidth of each direction, like the ones of a UDPClient
+        Bandwidth outbound = new Bandwidth(impairment(0), clock);
+        Bandwidth inbound = new Bandwidth(impairment(0), clock);
+
+        senders = new Sender[modes.length];
+        receivers = new LoopbackChannel[modes.length];
+        returns = new ReturnPath[modes.length];
+        for (int i = 0; i < modes.length; i++)
+        {
+            final int channel = i;
+            returns[i] = new ReturnPath(channel, inbound);
+            receivers[i] = new LoopbackChannel(returns[i]::send, i, modes[i], selectiveAck,
+                    dictionary != null ? dictionary.payloads : null, clock);
+            senders[i] = new Sender(i, modes[i], packetsPerSec[i], loseChance, msg, congestionControl,
+                    object -> transmit(channel, object));
+            senders[i].engine.setBandwidth(outbound);
+
+            if (dictionary != null)
+                senders[i].engine.setPayloadDictionary(dictionary, clock.millis());
+            schedule(clock.nanos(), senders[i]);
+        }
+
+        capture = EventCapture.open(capturePath, modes[0].reliable);
+        senders[0].engine.setCapture(capture);
+    }
+
+    // runs every event up to the given virtual time from now
+    void advance(long nanos){
+        long end = clock.nanos() + nanos;
+
+        while (!events.isEmpty() && events.peek().time <= end)
+        {
+            Event event = events.poll();
+            clock.advanceTo(event.time);
+            event.action.run();
+        }
+        clock.advanceTo(end);
+    }
+
+    // virtual time since the start
+    long getElapsedNanos(){
+        return clock.elapsed();
+    }
+
+    SimulationStats getStats(int channel){
+        return senders[channel].stats;
+    }
+
+    int getChannelCount(){
+        return senders.length;
+    }
+
+    // logs what the receive path saw, like the loopback server at a disconnect
+    void stop(){
+        events.clear();
+        if (capture != null) {
+            capture.close();
+            capture = null;
+        }
+
+        for (LoopbackChannel receiver : receivers)
+            receiver.logReceived();
+    }
+
+    private void schedule(long time, Runnable action){
+        events.add(new Event(time, scheduled++, action));
+    }
+
+    // a datagram leaving a sender, channels after the first wrap it like UDPClient does
+    private void transmit(int channel, Object object){
+        Object datagram = object;
+        if (channel > 0) {
+            PacketRegistry.ChannelDatagram wrapper = senders[channel].wrapper;
+            wrapper.datagram = object;
+            datagram = wrapper;
+        }
+
+        Object received = decode(serverRead, encode(clientWrite, datagram));
+
+        if (received instanceof PacketRegistry.ChannelDatagram) {
+            PacketRegistry.ChannelDatagram wrapped = (PacketRegistry.ChannelDatagram) received;
+            if (wrapped.channel > 0 && wrapped.channel < receivers.length)
+                receivers[wrapped.channel].received(wrapped.datagram);
+        }
+        else
+            receivers[0].received(received);
+    }
+
+    private void deliver(byte[] bytes){
+        Object received = decode(clientRead, bytes);
+
+        if (received instanceof PacketRegistry.ChannelDatagram) {
+            PacketRegistry.ChannelDatagram wrapped = (PacketRegistry.ChannelDatagram) received;
+            if (wrapped.channel > 0 && wrapped.channel < senders.length)
+                senders[wrapped.channel].engine.received(wrapped.datagram, clock.millis());
+        }
+        else
+            senders[0].engine.received(received, clock.millis());
+    }
+
+    private byte[] encode(Kryo kryo, Object object){
+        output.clear();
+        kryo.writeClassAndObject(output, object);
+        return output.toBytes();
+    }
+
+    private Object decode(Kryo kryo, byte[] bytes){
+        input.setBuffer(bytes);
+        return kryo.readClassAndObject(input);
+    }
+
+    private static class Event implements Comparable<Event> {
+
+        final long time;
+        final long order;
+        final Runnable action;
+
+        Event(long time, long order, Runnable action){
+            this.time = time;
+            this.order = order;
+            this.action = action;
+        }
+
+        // events at the same time run in the order they were scheduled
+        @Override
+        public int compareTo(Event other){
+            if (time != other.time)
+                return Long.compare(time, other.time);
+            return Long.compare(order, other.order);
+        }
+    }
+
+    // the PacketSender of one channel, its pacer counts virtual time
+    private class Sender implements Runnable {
+
+        private final SimulationEngine engine;
+        private final SimulationStats stats = new SimulationStats();
+        private final PacketRegistry.ChannelDatagram wrapper;
+        private final Pacer pacer;
+
+        Sender(int channel, DeliveryMode mode, int packetsPerSec, float loseChance, String msg,
+               CongestionControl congestionControl, SimulationEngine.Output output){
+            this.wrapper = new PacketRegistry.ChannelDatagram(channel);
+            this.pacer = new Pacer(packetsPerSec, burstSize, clock);
+
+            this.engine = new SimulationEngine(mode.reliable, mode.ordered, loseChance, msg, WINDOW_CAPACITY,
+                    UDPClient.channelMtu(channel, mtu), output, impairment(channel), stats,
+                    congestionControl.create(pacer.getRate()), null, clock);
+            engine.setAggregation(aggregationMicros);
+
+            stats.reset();
+            stats.getRtt().setTime(clock::millis);
+            stats.setGauges(engine::getWindowSize, engine::getSequenceNumber, engine::getLastAck,
+                    () -> (int) pacer.getRate());
+            stats.setReorderGauges(engine::getReorderOccupancy, engine::getMaxReorderOccupancy);
+        }
+
+        // one turn of PacketSender.run, the next one is due with the next token or a held back datagram
+        @Override
+        public void run(){
+            engine.pace(pacer);
+            engine.send(pacer.poll(), clock.millis());
+
+            long wait = Math.min(pacer.nanosUntilNext(), engine.nanosUntilNext());
+            schedule(clock.nanos() + Math.max(1, wait), this);
+        }
+    }
+
+    // the same impairment for every channel and the way back, each with a seed of its own
+    private ImpairmentConfig impairment(long offset){
+        ImpairmentConfig config = impairment != null ? impairment.copy() : new ImpairmentConfig();
+        config.setSeed((config.getSeed() != 0 ? config.getSeed() : 1) + offset);
+        return config;
+    }
+
+    /**
+     * The answers of one channel on their way back. They are encoded first, so the impairment may hold
+     * them while the receive path reuses its objects, and reach the sender as events of their own, so
+     * they never run inside a send.
+     */
+    private class ReturnPath implements Runnable {
+
+        private final Impairment link;
+
+        // time of the flush scheduled for the held back answers, Long.MAX_VALUE if there is none
+        private long wakeup = Long.MAX_VALUE;
+
+        ReturnPath(int channel, Bandwidth bandwidth){
+            this.link = new Impairment(impairment(RETURN_SEED + channel), 0, this::arrived, clock);
+            link.setBandwidth(bandwidth);
+        }
+
+        void send(Object answer){
+            link.send(encode(serverWrite, answer));
+            wake();
+        }
+
+        private void arrived(Object datagram){
+            final byte[] bytes = (byte[]) datagram;
+            schedule(clock.nanos(), () -> deliver(bytes));
+        }
+
+        @Override
+        public void run(){
+            wakeup = Long.MAX_VALUE;
+            link.flush();
+            wake();
+        }
+
+        private void wake(){
+            long wait = link.nanosUntilNext();
+            if (wait == Long.MAX_VALUE)
+                return;
+
+            long time = clock.nanos() + wait;
+            if (time < wakeup) {
+                wakeup = time;
+                schedule(time, this);
+            }
+        }
+    }
+}
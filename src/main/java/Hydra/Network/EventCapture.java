@@ -0,0 +1,157 @@
+package Hydra.Network;
+
+import Hydra.Logging.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records what the sender of one channel does as fixed size binary records in memory mapped files, for
+ * replaying a simulation into the GUI afterwards, see {@link CaptureReplay}. A record is written with a few
+ * absolute puts under an uncontended lock, the OS writes the pages out.
+ *
+ * The capture rolls over to a new segment when one is full: the first segment is the given file, the next
+ * ones get .1, .2 and so on appended. Every segment starts with a header, records follow until the first
+ * one with type 0.
+ */
+class EventCapture {
+
+    enum Type {
+        // a new packet, value is 1
+        SEND,
+        // a packet sent again, value is 1
+        RETRANSMIT,
+        // a datagram the impairment dropped, value is the number of packets in it
+        DROP,
+        // a packet counted lost, given up or expired
+        LOST,
+        // acknowledgement of the sequence, value is the number of packets it confirmed
+        ACK,
+        // RTT sample of the sequence in ms
+        RTT;
+
+        // 0 marks the end of the records
+        final int id = ordinal() + 1;
+
+        static Type of(int id){
+            Type[] types = values();
+            return id > 0 && id <= types.length ? types[id - 1] : null;
+        }
+    }
+
+    static final int MAGIC = 0x48434150; // HCAP
+    static final int VERSION = 1;
+
+    // magic, version, record size, flags, segment, start time
+    static final int HEADER_SIZE = 32;
+
+    // time, type, sequence, value, window size
+    static final int RECORD_SIZE = 24;
+
+    static final int FLAG_RELIABLE = 1;
+
+    // 24 MB per segment
+    static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+
+    private final Path path;
+    private final int segmentRecords;
+    private final int flags;
+    private final long startTime;
+
+    private MappedByteBuffer segment;
+    private int segmentIndex = -1;
+    private int written;
+
+    EventCapture(Path path, boolean reliable) throws IOException {
+        this(path, reliable, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    // starts a new capture, segments left from an earlier one are removed
+    EventCapture(Path path, boolean reliable, int segmentRecords) throws IOException {
+        this.path = path;
+        this.segmentRecords = Math.max(1, segmentRecords);
+        this.flags = reliable ? FLAG_RELIABLE : 0;
+        this.startTime = System.currentTimeMillis();
+
+        int stale = 1;
+        while (Files.deleteIfExists(segmentPath(path, stale)))
+            stale++;
+        roll();
+    }
+
+    // null for no path, or if the file cannot be created, the simulation runs without a capture then
+    static EventCapture open(Path path, boolean reliable){
+        if (path == null)
+            return null;
+
+        try {
+            return new EventCapture(path, reliable);
+        } catch (IOException ex) {
+            Logger.error("Event capture " + path, ex);
+            return null;
+        }
+    }
+
+    synchronized void record(Type type, long time, int sequence, int value, int windowSize){
+        if (segment == null)
+            return;
+
+        if (written == segmentRecords) {
+            try {
+                roll();
+            } catch (IOException ex) {
+                // the capture ends here, the simulation goes on
+                segment = null;
+                Logger.error("Event capture stopped at segment " + (segmentIndex + 1), ex);
+                return;
+            }
+        }
+
+        int offset = HEADER_SIZE + written * RECORD_SIZE;
+        segment.putLong(offset, time);
+        segment.putInt(offset + 8, type.id);
+        segment.putInt(offset + 12, sequence);
+        segment.putInt(offset + 16, value);
+        segment.putInt(offset + 20, windowSize);
+        written++;
+    }
+
+    private void roll() throws IOException {
+        if (segment != null)
+            segment.force();
+
+        segmentIndex++;
+        try (FileChannel channel = FileChannel.open(segmentPath(path, segmentIndex), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) segmentRecords * RECORD_SIZE);
+        }
+        written = 0;
+
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segment.putInt(8, RECORD_SIZE);
+        segment.putInt(12, flags);
+        segment.putInt(16, segmentIndex);
+        segment.putLong(20, startTime);
+    }
+
+    // later records are ignored
+    synchronized void close(){
+        if (segment == null)
+            return;
+
+        segment.force();
+        segment = null;
+    }
+
+    // the file of a segment, the first one is the capture's file itself
+    static Path segmentPath(Path path, int index){
+        return index == 0 ? path : Paths.get(path.toString() + "." + index);
+    }
+}
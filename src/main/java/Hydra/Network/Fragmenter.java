@@ -0,0 +1,133 @@
+package Hydra.Network;
+
+import Hydra.Packets.FragmentPacket;
+import Hydra.Packets.Packet;
+import Hydra.Statistics.SimulationStats;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Splits a message too large for one datagram into fragments which fit the MTU. Fragments are sent,
+ * acknowledged and retransmitted like single packets, a message counts as delivered once every fragment
+ * was acknowledged and as lost once every fragment was resolved and one of them was given up.
+ *
+ * One thread creates fragments, every thread resolving a packet may report it.
+ */
+class Fragmenter {
+
+    private final String msg;
+    private final int messageSize;
+    private final SimulationStats stats;
+
+    // enough for every message with a fragment in the window, and the one being split
+    private final int slots;
+
+    // slices for the MTU they were cut for
+    private String[] slices;
+    private int slicedFor;
+
+    // message being sent and its next fragment
+    private String[] current;
+    private int messageId = 0;
+    private int index = 0;
+
+    // fragments resolved and given up per message ID modulo slots, allocated once the message splits
+    private volatile AtomicIntegerArray resolved, lost;
+
+    Fragmenter(String msg, int windowCapacity, SimulationStats stats){
+        this.msg = msg;
+        this.messageSize = PacketRegistry.maxPacketSize(msg);
+        this.stats = stats;
+        this.slots = windowCapacity * 2;
+    }
+
+    /**
+     * True if the next packet is a fragment, the message does not fit or one is halfway sent.
+     */
+    boolean fragmenting(int mtu){
+        return index != 0 || messageSize > mtu - PacketRegistry.CONTAINER_OVERHEAD;
+    }
+
+    // whether the message goes out whole, in a container of one
+    static boolean fits(String msg, int mtu){
+        return PacketRegistry.maxPacketSize(msg) <= mtu - PacketRegistry.CONTAINER_OVERHEAD;
+    }
+
+    FragmentPacket next(int sequence, long now, float dropChance, int mtu){
+        if (index == 0) {
+            if (resolved == null) {
+                lost = new AtomicIntegerArray(slots);
+                resolved = new AtomicIntegerArray(slots);
+            }
+
+            current = slices(mtu);
+            messageId++;
+
+            int slot = slot(messageId);
+            lost.set(slot, 0);
+            resolved.set(slot, 0);
+        }
+
+        FragmentPacket fragment = new FragmentPacket(sequence, now, current[index], dropChance,
+                messageId, index, current.length);
+
+        if (++index == current.length) {
+            index = 0;
+            stats.incrementMessagesSent();
+        }
+        return fragment;
+    }
+
+    /**
+     * Reports a packet which left the window, acknowledged or given up. Single packets are ignored.
+     */
+    void resolved(Packet packet, boolean delivered){
+        if (!(packet instanceof FragmentPacket))
+            return;
+
+        FragmentPacket fragment = (FragmentPacket) packet;
+        int slot = slot(fragment.getMessageId());
+
+        // lost first, so the one resolving the last fragment sees it
+        if (!delivered)
+            lost.incrementAndGet(slot);
+
+        if (resolved.incrementAndGet(slot) == fragment.getCount()) {
+            if (lost.get(slot) == 0)
+                stats.incrementMessagesDelivered();
+            else stats.incrementMessagesLost();
+        }
+    }
+
+    private int slot(int messageId){
+        return Math.floorMod(messageId, slots);
+    }
+
+    // cuts the message by the bytes Kryo writes for it, so every fragment fits a container of one
+    private String[] slices(int mtu){
+        if (slices != null && slicedFor == mtu)
+            return slices;
+
+        int budget = mtu - PacketRegistry.CONTAINER_OVERHEAD - PacketRegistry.maxFragmentSize("");
+        ArrayList<String> cut = new ArrayList<>();
+        int start = 0;
+        int bytes = 0;
+
+        for (int i = 0; i < msg.length(); i++)
+        {
+            int size = PacketRegistry.charSize(msg.charAt(i));
+            if (bytes + size > budget && i > start) {
+                cut.add(msg.substring(start, i));
+                start = i;
+                bytes = 0;
+            }
+            bytes += size;
+        }
+        cut.add(msg.substring(start));
+
+        slices = cut.toArray(new String[0]);
+        slicedFor = mtu;
+        return slices;
+    }
+}
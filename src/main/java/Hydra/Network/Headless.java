@@ -0,0 +1,309 @@
+package Hydra.Network;
+
+import Hydra.Generic.NetworkListener;
+import Hydra.Logging.Logger;
+import Hydra.Statistics.RttEstimator;
+import Hydra.Statistics.RttHistogram;
+import Hydra.Statistics.RttStats;
+import Hydra.Statistics.SimulationStats;
+import Hydra.Statistics.StatsSnapshot;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line load generator running the same sender/ACK engine as the GUI, without JavaFX.
+ * Prints one stats line per interval and a summary at the end. With --clock virtual the channels run
+ * against the loopback receive path in simulated time, as fast as the CPU allows.
+ */
+public class Headless implements NetworkListener {
+
+    private static final String USAGE = "usage: Headless" + SimulationOptions.USAGE +
+            " [--message-size chars] [--transport kryonet|nio] [--channels mode:pps,...] [--clock system|virtual]" +
+            " [--capture file]";
+
+    private final SimulationOptions options = new SimulationOptions(100);
+    private int messageSize = 0;
+    private TransportType transport = TransportType.KRYONET;
+
+    // the discrete event simulation, --server and --transport do not apply then
+    private boolean virtualClock = false;
+
+    // binary record of the first channel, Launch --replay=file plays it into the GUI
+    private Path capture = null;
+
+    // several channels over the connection instead of --mode and --pps, modes include sequenced
+    private DeliveryMode[] channels = null;
+    private int[] channelPps = null;
+
+    private final CountDownLatch connected = new CountDownLatch(1);
+    private volatile ConnectionState state;
+    private volatile String criticalError;
+
+    public static void main(String[] args) throws InterruptedException {
+        Headless headless = new Headless();
+
+        try {
+            headless.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        Logger.initialize();
+        System.exit(headless.run());
+    }
+
+    private void parse(String[] args){
+        options.parse(args, this::parseOption);
+    }
+
+    private boolean parseOption(String option, String value){
+        switch (option){
+            case "--message-size": messageSize = Math.max(0, Integer.parseInt(value)); break;
+            case "--transport": transport = TransportType.parse(value); break;
+            case "--channels": setChannels(value); break;
+            case "--clock": setClock(value); break;
+            case "--capture": capture = Paths.get(value); break;
+            default: return false;
+        }
+        return true;
+    }
+
+    // unreliable:1000,ordered:200 runs two channels, the first one is what a single channel would send
+    private void setChannels(String spec){
+        String[] entries = spec.split(",");
+        channels = new DeliveryMode[entries.length];
+        channelPps = new int[entries.length];
+
+        for (int i = 0; i < entries.length; i++)
+        {
+            String[] parts = entries[i].trim().split(":");
+            if (parts.length != 2)
+                throw new IllegalArgumentException("Invalid channel " + entries[i] + ", expected mode:pps");
+
+            channels[i] = DeliveryMode.parse(parts[0]);
+            channelPps[i] = Integer.parseInt(parts[1]);
+        }
+    }
+
+    private void setClock(String clock){
+        switch (clock){
+            case "system": virtualClock = false; break;
+            case "virtual": virtualClock = true; break;
+            default: throw new IllegalArgumentException("Unknown clock " + clock);
+        }
+    }
+
+    private int run() throws InterruptedException {
+        if (channels == null) {
+            channels = new DeliveryMode[] { DeliveryMode.of(options.isReliable(), options.isOrdered()) };
+            channelPps = new int[] { options.getPps() };
+        }
+
+        if (virtualClock)
+            return runVirtual();
+
+        // callbacks run straight on the network threads, nothing here touches a UI
+        UDPClient udpClient = new UDPClient(this, Runnable::run, transport);
+        udpClient.setSelectiveLoopbackAck(options.isSelectiveAck());
+        udpClient.setImpairment(options.getImpairment());
+        udpClient.setPayloadDictionary(options.isPayloadDictionary());
+        udpClient.setAggregation(options.getAggregation());
+        udpClient.setMtu(options.getMtu());
+        udpClient.setBurstSize(options.getBurst());
+        udpClient.setCapture(capture);
+        new Thread(udpClient, "Network client").start();
+
+        udpClient.connect(options.getServer());
+        connected.await();
+
+        if (state != ConnectionState.CONNECTED) {
+            System.err.println("Could not connect to " + options.getServer());
+            udpClient.stop();
+            return 1;
+        }
+
+        udpClient.startSimulation(channels, channelPps, options.getLoss(), sized(options.getMessage(), messageSize),
+                options.getCongestionControl());
+
+        StatsSnapshot snapshot = new StatsSnapshot();
+        RttHistogram recent = new RttHistogram();
+
+        long start = System.currentTimeMillis();
+        long end = start + TimeUnit.SECONDS.toMillis(options.getDuration());
+        long[] previousConfirmed = new long[channels.length];
+
+        while (criticalError == null && state == ConnectionState.CONNECTED && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(options.getInterval()));
+
+            for (int i = 0; i < channels.length; i++)
+                previousConfirmed[i] = printInterval(i, udpClient.getStats(i), (System.currentTimeMillis() - start) / 1000,
+                        previousConfirmed[i], snapshot, recent);
+        }
+
+        udpClient.stopSimulation();
+        udpClient.disconnect();
+        udpClient.stop();
+
+        double seconds = (System.currentTimeMillis() - start) / 1000d;
+        for (int i = 0; i < channels.length; i++)
+        {
+            if (channels.length > 1)
+                System.out.println("channel " + i + " (" + channels[i] + ")");
+            printSummary(udpClient.getStats(i), seconds);
+        }
+
+        if (criticalError != null) {
+            System.err.println(criticalError);
+            return 1;
+        }
+        return 0;
+    }
+
+    // same output as a real run, the times are simulated seconds, and the same options and seed repeat it exactly
+    private int runVirtual(){
+        DiscreteEventSimulation simulation = new DiscreteEventSimulation();
+        simulation.setSelectiveAck(options.isSelectiveAck());
+        simulation.setImpairment(options.getImpairment());
+        simulation.setPayloadDictionary(options.isPayloadDictionary());
+        simulation.setAggregation(options.getAggregation());
+        simulation.setMtu(options.getMtu());
+        simulation.setBurstSize(options.getBurst());
+        simulation.setCapture(capture);
+        simulation.start(channels, channelPps, options.getLoss(), sized(options.getMessage(), messageSize),
+                options.getCongestionControl());
+
+        StatsSnapshot snapshot = new StatsSnapshot();
+        RttHistogram recent = new RttHistogram();
+
+        long step = TimeUnit.SECONDS.toNanos(options.getInterval());
+        long end = TimeUnit.SECONDS.toNanos(options.getDuration());
+        long[] previousConfirmed = new long[channels.length];
+        long started = System.nanoTime();
+
+        while (simulation.getElapsedNanos() < end)
+        {
+            simulation.advance(step);
+
+            for (int i = 0; i < channels.length; i++)
+                previousConfirmed[i] = printInterval(i, simulation.getStats(i),
+                        TimeUnit.NANOSECONDS.toSeconds(simulation.getElapsedNanos()), previousConfirmed[i],
+                        snapshot, recent);
+        }
+
+        simulation.stop();
+
+        double seconds = simulation.getElapsedNanos() / (double) TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < channels.length; i++)
+        {
+            if (channels.length > 1)
+                System.out.println("channel " + i + " (" + channels[i] + ")");
+            printSummary(simulation.getStats(i), seconds);
+        }
+
+        Logger.info("Virtual clock: {} ms simulated in {} ms",
+                TimeUnit.NANOSECONDS.toMillis(simulation.getElapsedNanos()),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return 0;
+    }
+
+    // one stats line of a channel, returns its confirmed count for the goodput of the next one
+    private long printInterval(int channel, SimulationStats stats, long elapsedSeconds, long previousConfirmed,
+                               StatsSnapshot snapshot, RttHistogram recent){
+        stats.snapshot(snapshot);
+        RttStats rtt = stats.getRtt();
+        rtt.window(recent);
+
+        System.out.println(String.format(Locale.ROOT,
+                "[%5d s] %ssent %d confirmed %d lost %d window %d rate %d pps goodput %d pps" +
+                        " srtt %d ms p50 %d p99 %d max %d ms",
+                elapsedSeconds, label(channel),
+                snapshot.getSent(), snapshot.getConfirmed(), snapshot.getLost(),
+                snapshot.getWindowSize(), snapshot.getPacingRate(),
+                (snapshot.getConfirmed() - previousConfirmed) / options.getInterval(),
+                rtt.getEstimator().getSmoothedRtt(),
+                recent.getValueAtPercentile(50), recent.getValueAtPercentile(99), recent.getMax()));
+
+        return snapshot.getConfirmed();
+    }
+
+    // channel prefix of the interval lines, nothing for a single channel
+    private String label(int channel){
+        return channels.length > 1 ? "ch" + channel + " " + channels[channel] + " " : "";
+    }
+
+    private void printSummary(SimulationStats stats, double seconds){
+        StatsSnapshot snapshot = stats.snapshot();
+        RttHistogram total = stats.getRtt().getTotal();
+        RttEstimator estimator = stats.getRtt().getEstimator();
+
+        System.out.println(String.format(Locale.ROOT,
+                "summary: %.1f s, sent %d, confirmed %d (%.1f pps), lost %d, sequence gap %d%n" +
+                        "rtt: srtt %d ms, rttvar %d ms, p50 %d, p90 %d, p99 %d, max %d ms over %d samples",
+                seconds, snapshot.getSent(), snapshot.getConfirmed(),
+                seconds > 0 ? snapshot.getConfirmed() / seconds : 0,
+                snapshot.getLost(), snapshot.getSequenceGap(),
+                estimator.getSmoothedRtt(), estimator.getRttVariance(),
+                total.getValueAtPercentile(50), total.getValueAtPercentile(90),
+                total.getValueAtPercentile(99), total.getMax(), total.getCount()));
+
+        if (snapshot.getDelivered() > 0) {
+            RttHistogram headOfLine = stats.getHeadOfLine();
+            RttHistogram deliveryDelay = stats.getDeliveryDelay();
+            System.out.println(String.format(Locale.ROOT,
+                    "in order: delivered %d, head-of-line delay p50 %d, p99 %d, max %d ms, mean %d ms," +
+                            " since first send p50 %d, p99 %d, max %d ms, reorder buffer up to %d packets",
+                    snapshot.getDelivered(), headOfLine.getValueAtPercentile(50),
+                    headOfLine.getValueAtPercentile(99), headOfLine.getMax(), headOfLine.getMean(),
+                    deliveryDelay.getValueAtPercentile(50), deliveryDelay.getValueAtPercentile(99),
+                    deliveryDelay.getMax(), snapshot.getMaxReorderOccupancy()));
+        }
+
+        if (snapshot.getMessagesSent() > 0)
+            System.out.println(String.format(Locale.ROOT,
+                    "messages: sent %d, delivered %d (%.1f per s), lost %d, the counts above are fragments",
+                    snapshot.getMessagesSent(), snapshot.getMessagesDelivered(),
+                    seconds > 0 ? snapshot.getMessagesDelivered() / seconds : 0, snapshot.getMessagesLost()));
+    }
+
+    // repeats the message up to the given length, messages larger than the MTU are sent in fragments
+    private static String sized(String message, int length){
+        if (length <= 0 || message.isEmpty())
+            return message;
+
+        StringBuilder sized = new StringBuilder(length);
+        while (sized.length() < length)
+            sized.append(message);
+        sized.setLength(length);
+        return sized.toString();
+    }
+
+    @Override
+    public void onConnectionStateChanged(ConnectionState state) {
+        this.state = state;
+        connected.countDown();
+    }
+
+    @Override
+    public void update(int sent, int received, int confirmed, int lost) {}
+
+    @Override
+    public void received(int sequence, long time) {}
+
+    @Override
+    public void updateSequences(int client, int server) {}
+
+    @Override
+    public void updateRTT() {}
+
+    @Override
+    public void onCriticalError(String message) {
+        this.criticalError = message;
+    }
+}
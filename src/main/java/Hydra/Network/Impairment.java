@@ -0,0 +1,297 @@
+package Hydra.Network;
+
+import Hydra.Packets.Packet;
+import Hydra.Packets.PacketBatch;
+import Hydra.Packets.PacketContainer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seeded network impairment between a SimulationEngine and its transport: Gilbert-Elliott loss, latency with
+ * jitter, reordering, duplication and a bandwidth cap with a drop-tail queue.
+ *
+ * Every decision is made when a datagram is handed in, so one seed gives the same outcome for the same
+ * traffic. Delayed datagrams are copied into pooled entries, as the engine reuses its objects, and released
+ * by {@link #flush()}. Not thread safe, the sender thread does both.
+ */
+class Impairment {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // IPv4 and UDP headers, counted against the bandwidth cap
+    private static final int DATAGRAM_OVERHEAD = 28;
+
+    // datagrams held back at once, further ones are dropped like on a full queue
+    private static final int MAX_DELAYED = 1 << 16;
+
+    private static final double PARETO_SHAPE = 2.5;
+
+    private final SimulationEngine.Output output;
+    private final Clock clock;
+    private final Random random;
+
+    private final double burstEnter, burstExit, burstLoss;
+    private final double latency, jitter;
+    private final ImpairmentConfig.Jitter distribution;
+    private final double reorderChance, duplicateChance;
+
+    // its own unless the channels of a connection share one
+    private volatile Bandwidth bandwidth;
+
+    // loss chance of the good state, the simulation's loss slider
+    private volatile double loss;
+
+    private boolean bad = false;
+    private long order = 0;
+
+    // min-heap of delayed datagrams on (due, order) and the entries ready for reuse
+    private Entry[] heap = new Entry[16];
+    private int heapSize = 0;
+    private Entry[] free = new Entry[16];
+    private int freeCount = 0;
+    private int allocated = 0;
+
+    Impairment(ImpairmentConfig config, double loss, SimulationEngine.Output output, Clock clock){
+        this.output = output;
+        this.clock = clock;
+        this.random = config.getSeed() != 0 ? new Random(config.getSeed()) : new Random();
+
+        this.burstEnter = config.getBurstEnter();
+        this.burstExit = config.getBurstExit();
+        this.burstLoss = config.getBurstLoss();
+        this.latency = config.getLatencyMs() * NANOS_PER_MILLI;
+        this.jitter = config.getJitterMs() * NANOS_PER_MILLI;
+        this.distribution = config.getJitter();
+        this.reorderChance = config.getReorderChance();
+        this.duplicateChance = config.getDuplicateChance();
+        this.bandwidth = new Bandwidth(config, clock);
+
+        setLoss(loss);
+    }
+
+    void setLoss(double loss){
+        this.loss = loss;
+    }
+
+    // the bandwidth cap and queue of the link, shared by the channels of one connection
+    void setBandwidth(Bandwidth bandwidth){
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Hands a datagram to the impaired network. Returns false if it is lost there.
+     */
+    boolean send(Object object){
+        long now = clock.nanos();
+        flush(now);
+
+        // the chain steps once per datagram, so bursts span consecutive datagrams
+        if (bad) {
+            if (random.nextDouble() < burstExit)
+                bad = false;
+        }
+        else if (random.nextDouble() < burstEnter)
+            bad = true;
+
+        if (random.nextDouble() < (bad ? burstLoss : loss))
+            return false;
+
+        boolean sent = schedule(object, now);
+
+        if (duplicateChance > 0 && random.nextDouble() < duplicateChance)
+            sent |= schedule(object, now);
+
+        return sent;
+    }
+
+    /**
+     * Sends the delayed datagrams which are due.
+     */
+    void flush(){
+        if (heapSize > 0)
+            flush(clock.nanos());
+    }
+
+    // time until the next delayed datagram is due, Long.MAX_VALUE if none is waiting
+    long nanosUntilNext(){
+        return heapSize == 0 ? Long.MAX_VALUE : Math.max(0, heap[0].due - clock.nanos());
+    }
+
+    private void flush(long now){
+        while (heapSize > 0 && heap[0].due - now <= 0)
+        {
+            Entry entry = poll();
+            output.sendUDP(entry.object);
+            entry.object = null;
+            free[freeCount++] = entry;
+        }
+    }
+
+    private boolean schedule(Object object, long now){
+        long departure = bandwidth.departure(size(object), now);
+        if (departure == Bandwidth.DROPPED)
+            return false;
+
+        // reordered datagrams skip the latency and overtake the ones in flight
+        if ((latency > 0 || jitter > 0) && !(reorderChance > 0 && random.nextDouble() < reorderChance))
+            departure += delay();
+
+        if (departure - now <= 0) {
+            output.sendUDP(object);
+            return true;
+        }
+
+        Entry entry = take();
+        if (entry == null)
+            return false;
+
+        entry.copy(object);
+        entry.due = departure;
+        entry.order = order++;
+        offer(entry);
+        return true;
+    }
+
+    private long delay(){
+        double delay = latency;
+
+        switch (distribution){
+            case UNIFORM:
+                delay += (2 * random.nextDouble() - 1) * jitter;
+                break;
+            case NORMAL:
+                delay += random.nextGaussian() * jitter;
+                break;
+            case PARETO:
+                // heavy tail with a mean of jitter
+                delay += jitter * (PARETO_SHAPE - 1) * (Math.pow(1 - random.nextDouble(), -1 / PARETO_SHAPE) - 1);
+                break;
+        }
+
+        return Math.max(0, (long) delay);
+    }
+
+    private static int size(Object object){
+        if (object instanceof Packet)
+            return DATAGRAM_OVERHEAD + PacketRegistry.maxPacketSize((Packet) object);
+
+        if (object instanceof PacketContainer) {
+            PacketContainer container = (PacketContainer) object;
+            int size = DATAGRAM_OVERHEAD + PacketRegistry.CONTAINER_OVERHEAD;
+            for (int i = 0; i < container.getSize(); i++)
+                size += PacketRegistry.maxPacketSize(container.get(i));
+            return size;
+        }
+
+        // encoded already
+        if (object instanceof byte[])
+            return DATAGRAM_OVERHEAD + ((byte[]) object).length;
+
+        return DATAGRAM_OVERHEAD;
+    }
+
+    private Entry take(){
+        if (freeCount > 0)
+            return free[--freeCount];
+
+        if (allocated == MAX_DELAYED)
+            return null;
+
+        if (allocated == free.length)
+            free = Arrays.copyOf(free, free.length * 2);
+
+        allocated++;
+        return new Entry();
+    }
+
+    private void offer(Entry entry){
+        if (heapSize == heap.length)
+            heap = Arrays.copyOf(heap, heap.length * 2);
+
+        int i = heapSize++;
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+            if (!heap[parent].after(entry))
+                break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+    }
+
+    private Entry poll(){
+        Entry first = heap[0];
+        Entry last = heap[--heapSize];
+        heap[heapSize] = null;
+
+        if (heapSize > 0) {
+            int i = 0;
+            while (true)
+            {
+                int child = 2 * i + 1;
+                if (child >= heapSize)
+                    break;
+                if (child + 1 < heapSize && heap[child].after(heap[child + 1]))
+                    child++;
+                if (!last.after(heap[child]))
+                    break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+        }
+
+        return first;
+    }
+
+    // a delayed datagram, holding its own copies of the engine's reused objects
+    private static final class Entry {
+
+        long due;
+        long order;
+        Object object;
+
+        private final PacketCopies copies = new PacketCopies();
+        private PacketContainer container;
+        private PacketBatch batch;
+        private final ArrayList<Packet> elements = new ArrayList<>();
+
+        boolean after(Entry other){
+            return due != other.due ? due - other.due > 0 : order > other.order;
+        }
+
+        void copy(Object source){
+            if (source instanceof Packet) {
+                object = copies.copy((Packet) source, 0);
+            }
+            else if (source instanceof PacketContainer) {
+                PacketContainer original = (PacketContainer) source;
+
+                // a batch stays one, the receiver handles its packets alone
+                PacketContainer copy;
+                if (original instanceof PacketBatch) {
+                    if (batch == null)
+                        batch = new PacketBatch();
+                    copy = batch;
+                }
+                else {
+                    if (container == null)
+                        container = new PacketContainer();
+                    copy = container;
+                }
+
+                elements.clear();
+                for (int i = 0; i < original.getSize(); i++)
+                    elements.add(copies.copy(original.get(i), i));
+
+                copy.setElements(elements);
+                object = copy;
+            }
+            else object = source;
+        }
+    }
+}
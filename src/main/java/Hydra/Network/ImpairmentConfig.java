@@ -0,0 +1,156 @@
+package Hydra.Network;
+
+/**
+ * Settings of the network impairment applied to outgoing datagrams. Without changes it only drops packets
+ * uniformly with the simulation's loss chance, as the client always did.
+ */
+class ImpairmentConfig {
+
+    enum Jitter {
+        UNIFORM,
+        NORMAL,
+        PARETO
+    }
+
+    // command line options understood by parseOption
+    static final String USAGE = " [--seed n] [--burst-enter 0-1] [--burst-exit 0-1] [--burst-loss 0-1]" +
+            " [--latency ms] [--jitter ms] [--jitter-dist uniform|normal|pareto] [--reorder 0-1]" +
+            " [--duplicate 0-1] [--bandwidth kbit/s] [--queue ms]";
+
+    // 0 picks a random seed
+    private long seed = 0;
+
+    // Gilbert-Elliott burst loss: chances to enter and leave the bad state per packet, loss chance while bad.
+    // The good state loses packets with the simulation's loss chance.
+    private double burstEnter = 0;
+    private double burstExit = 1;
+    private double burstLoss = 1;
+
+    private double latencyMs = 0;
+    private double jitterMs = 0;
+    private Jitter jitter = Jitter.UNIFORM;
+
+    // reordered packets skip the latency, so they overtake the ones sent before them
+    private double reorderChance = 0;
+    private double duplicateChance = 0;
+
+    // 0 for no bandwidth cap, packets which would queue longer than maxQueueMs are dropped
+    private long bandwidthKbit = 0;
+    private double maxQueueMs = 100;
+
+    /**
+     * Applies a command line option, returns false if it is not an impairment option.
+     */
+    boolean parseOption(String option, String value){
+        switch (option){
+            case "--seed": seed = Long.parseLong(value); break;
+            case "--burst-enter": burstEnter = chance(value); break;
+            case "--burst-exit": burstExit = chance(value); break;
+            case "--burst-loss": burstLoss = chance(value); break;
+            case "--latency": latencyMs = Math.max(0, Double.parseDouble(value)); break;
+            case "--jitter": jitterMs = Math.max(0, Double.parseDouble(value)); break;
+            case "--jitter-dist": jitter = distribution(value); break;
+            case "--reorder": reorderChance = chance(value); break;
+            case "--duplicate": duplicateChance = chance(value); break;
+            case "--bandwidth": bandwidthKbit = Math.max(0, Long.parseLong(value)); break;
+            case "--queue": maxQueueMs = Math.max(0, Double.parseDouble(value)); break;
+            default: return false;
+        }
+        return true;
+    }
+
+    ImpairmentConfig copy(){
+        ImpairmentConfig copy = new ImpairmentConfig();
+        copy.seed = seed;
+        copy.setBurstLoss(burstEnter, burstExit, burstLoss);
+        copy.setDelay(latencyMs, jitterMs, jitter);
+        copy.setReorderChance(reorderChance);
+        copy.setDuplicateChance(duplicateChance);
+        copy.setBandwidth(bandwidthKbit, maxQueueMs);
+        return copy;
+    }
+
+    private static Jitter distribution(String name){
+        for (Jitter jitter : Jitter.values())
+            if (jitter.name().equalsIgnoreCase(name))
+                return jitter;
+        throw new IllegalArgumentException("Unknown jitter distribution " + name);
+    }
+
+    private static double chance(String value){
+        return Math.max(0, Math.min(1, Double.parseDouble(value)));
+    }
+
+    long getSeed(){
+        return seed;
+    }
+
+    void setSeed(long seed){
+        this.seed = seed;
+    }
+
+    double getBurstEnter(){
+        return burstEnter;
+    }
+
+    double getBurstExit(){
+        return burstExit;
+    }
+
+    double getBurstLoss(){
+        return burstLoss;
+    }
+
+    void setBurstLoss(double enter, double exit, double loss){
+        this.burstEnter = enter;
+        this.burstExit = exit;
+        this.burstLoss = loss;
+    }
+
+    double getLatencyMs(){
+        return latencyMs;
+    }
+
+    double getJitterMs(){
+        return jitterMs;
+    }
+
+    Jitter getJitter(){
+        return jitter;
+    }
+
+    void setDelay(double latencyMs, double jitterMs, Jitter jitter){
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.jitter = jitter;
+    }
+
+    double getReorderChance(){
+        return reorderChance;
+    }
+
+    void setReorderChance(double chance){
+        this.reorderChance = chance;
+    }
+
+    double getDuplicateChance(){
+        return duplicateChance;
+    }
+
+    void setDuplicateChance(double chance){
+        this.duplicateChance = chance;
+    }
+
+    long getBandwidthKbit(){
+        return bandwidthKbit;
+    }
+
+    double getMaxQueueMs(){
+        return maxQueueMs;
+    }
+
+    void setBandwidth(long kbit, double maxQueueMs){
+        this.bandwidthKbit = kbit;
+        this.maxQueueMs = maxQueueMs;
+    }
+}
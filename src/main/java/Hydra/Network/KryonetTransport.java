@@ -0,0 +1,69 @@
+package Hydra.Network;
+
+import com.esotericsoftware.kryonet.Client;
+import com.esotericsoftware.kryonet.Connection;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+// the compatibility transport, Kryonet's own client with its write buffer and update thread
+class KryonetTransport implements Transport {
+
+    private static final int WRITE_BUFFER_SIZE = 30_000;
+
+    private final Client client = new Client(WRITE_BUFFER_SIZE, UDPClient.OBJECT_BUFFER_SIZE);
+
+    KryonetTransport(){
+        PacketRegistry.register(client);
+    }
+
+    @Override
+    public void setListener(Listener listener){
+        client.addListener(new com.esotericsoftware.kryonet.Listener(){
+            @Override
+            public void received(Connection connection, Object object) {
+                listener.received(object);
+            }
+
+            @Override
+            public void disconnected(Connection connection) {
+                listener.disconnected();
+            }
+        });
+    }
+
+    @Override
+    public void connect(int timeout, InetAddress host, int tcpPort, int udpPort) throws IOException {
+        client.connect(timeout, host, tcpPort, udpPort);
+    }
+
+    @Override
+    public boolean isConnected(){
+        return client.isConnected();
+    }
+
+    @Override
+    public void sendTCP(Object object){
+        client.sendTCP(object);
+    }
+
+    @Override
+    public void sendUDP(Object object){
+        client.sendUDP(object);
+    }
+
+    @Override
+    public void close(){
+        client.close();
+    }
+
+    @Override
+    public void stop(){
+        client.stop();
+    }
+
+    @Override
+    public void run(){
+        client.run();
+    }
+}
@@ -8,6 +8,8 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 import java.io.File;
+import java.nio.file.Paths;
+import java.util.Map;
 
 public class Launch extends Application {
 
@@ -31,6 +33,14 @@ public class Launch extends Application {
         primaryStage.setMaxHeight(1000);
 
         applicationManager = new ApplicationManager(primaryStage, controller);
+
+        // --capture=file records the simulations, --replay=file [--speed=n] plays one back
+        Map<String, String> options = getParameters().getNamed();
+        if (options.containsKey("capture"))
+            applicationManager.setCapture(Paths.get(options.get("capture")));
+        if (options.containsKey("replay"))
+            applicationManager.replay(Paths.get(options.get("replay")),
+                    Double.parseDouble(options.getOrDefault("speed", "1")));
     }
 
     public static void main(String[] args) {
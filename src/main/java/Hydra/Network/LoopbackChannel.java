@@ -0,0 +1,325 @@
+package Hydra.Network;
+
+import Hydra.Logging.Logger;
+import Hydra.Packets.AckPacket;
+import Hydra.Packets.FragmentPacket;
+import Hydra.Packets.Packet;
+import Hydra.Packets.PacketBatch;
+import Hydra.Packets.PacketContainer;
+import Hydra.Packets.PayloadPacket;
+import Hydra.Packets.ReorderBuffer;
+
+/**
+ * Receive state of one channel of a loopback client: acknowledges packets like the remote server, delivers
+ * the ordered mode in sequence, drops stale packets of the sequenced mode and puts fragments together again.
+ * Answers go to the given output, wrapped with the channel number for channels after the first.
+ *
+ * Not thread safe, the loopback server and the discrete event simulation each feed it from one thread.
+ */
+class LoopbackChannel
+{
+    // packets of the ordered mode buffered ahead of a gap, as many as the client window holds
+    private static final int RECEIVE_WINDOW = 1 << 16;
+
+    // partial messages and their characters held per channel
+    private static final int REASSEMBLY_MESSAGES = 64;
+    private static final int REASSEMBLY_CHARS = 4 << 20;
+
+    private final SimulationEngine.Output output;
+    private final DeliveryMode mode;
+    private final boolean selectiveAck;
+    private final Clock clock;
+    private final PacketRegistry.ChannelDatagram wrapper;
+
+    // dictionary of the client, null if it sent none
+    private final String[] payloads;
+
+    private int serverSequence = 0;
+
+    // sequenced mode: the newest sequence, older packets are dropped
+    private boolean hasNewest = false;
+    private int newest;
+    private long stale;
+
+    // ordered mode: packets received ahead of a gap, the echo in the form the packets came in
+    private ReorderBuffer reorder;
+    private Packet echoed;
+    private long arrivedLaunchTime;
+    private long heldBack, maxHeldFor;
+
+    // compact packets carry 16 bit sequences, they are expanded next to the highest one seen, which the
+    // sender keeps within 2^15 of everything it has in flight
+    private boolean hasHighest = false;
+    private int highest;
+
+    private boolean hasLatest = false;
+    private int latest;
+    private long ackBits;
+    private final AckPacket ack = new AckPacket();
+    private final Packet reply = new Packet();
+    private final PayloadPacket payloadReply = new PayloadPacket();
+    private final PacketBatch echoes = new PacketBatch();
+    private final Reassembler reassembler = new Reassembler(REASSEMBLY_MESSAGES, REASSEMBLY_CHARS);
+
+    LoopbackChannel(SimulationEngine.Output output, int number, DeliveryMode mode, boolean selectiveAck,
+                    String[] payloads, Clock clock)
+    {
+        this.output = output;
+        this.mode = mode;
+        this.selectiveAck = selectiveAck;
+        this.payloads = payloads;
+        this.clock = clock;
+        this.wrapper = number > 0 ? new PacketRegistry.ChannelDatagram(number) : null;
+    }
+
+    void received(Object object)
+    {
+        if(object instanceof Packet)
+        {
+            final Packet pckt = (Packet) object;
+            if(!known(pckt))
+                return;
+            expand(pckt);
+            if(stale(pckt))
+                return;
+            reassemble(pckt);
+
+            if(selectiveAck)
+                acknowledge(pckt.getSequenceNumber(), pckt.getLaunchTime());
+            else
+                echo(pckt);
+        }
+        else if(object instanceof PacketBatch)
+        {
+            receivedBatch((PacketBatch) object);
+        }
+        else if(object instanceof PacketContainer)
+        {
+            receivedOrdered((PacketContainer) object);
+        }
+    }
+
+    // every packet counts alone, but they are answered together
+    private void receivedBatch(PacketBatch batch)
+    {
+        boolean acknowledged = false;
+        long launchTime = 0;
+        echoes.clear();
+
+        for(int i = 0; i < batch.getSize(); i++)
+        {
+            final Packet pckt = batch.get(i);
+            if(!known(pckt))
+                continue;
+            expand(pckt);
+            if(stale(pckt))
+                continue;
+            reassemble(pckt);
+
+            if(selectiveAck) {
+                if(record(pckt.getSequenceNumber(), pckt.getLaunchTime())) {
+                    acknowledged = true;
+                    launchTime = pckt.getLaunchTime();
+                }
+            }
+            else {
+                pckt.setServerSequence(serverSequence++);
+                echoes.add(pckt);
+            }
+        }
+
+        if(acknowledged)
+            sendAck(launchTime);
+        else if(echoes.getSize() == 1)
+            send(echoes.get(0));
+        else if(echoes.getSize() > 1)
+            send(echoes);
+    }
+
+    // packets are delivered in sequence, the ones after a gap wait in the receive window
+    private void receivedOrdered(PacketContainer container)
+    {
+        if(reorder == null)
+            reorder = new ReorderBuffer(RECEIVE_WINDOW, this::delivered);
+
+        long now = clock.millis();
+
+        // the cumulative echo is sent in the form the packets came in
+        echoed = reply;
+        if(container.getSize() > 0 && container.get(0) instanceof PayloadPacket) {
+            payloadReply.setPayloadId(((PayloadPacket) container.get(0)).getPayloadId());
+            echoed = payloadReply;
+        }
+
+        // the selective ACK covers the whole container
+        boolean acknowledged = false;
+        long launchTime = 0;
+
+        for(int i = 0; i < container.getSize(); i++)
+        {
+            final Packet pckt = container.get(i);
+            if(!known(pckt))
+                continue;
+            expand(pckt);
+
+            int sequence = pckt.getSequenceNumber();
+            if(sequence - reorder.getNext() >= RECEIVE_WINDOW)
+                continue;
+
+            if(selectiveAck && record(sequence, pckt.getLaunchTime())) {
+                acknowledged = true;
+                launchTime = pckt.getLaunchTime();
+            }
+
+            // delivers it and everything it unblocks, duplicates are only acknowledged again
+            if(!reorder.isBuffered(sequence) && sequence - reorder.getNext() >= 0)
+                reassemble(pckt);
+            arrivedLaunchTime = pckt.getLaunchTime();
+            reorder.offer(sequence, pckt.getLaunchTime(), now);
+        }
+
+        if(acknowledged)
+            sendAck(launchTime);
+    }
+
+    private void delivered(int sequence, long launchTime, long heldFor){
+        if(heldFor > 0) {
+            heldBack++;
+            maxHeldFor = Math.max(maxHeldFor, heldFor);
+        }
+
+        // the echo acknowledges its sequence and everything below it, the client cuts its window there. It
+        // carries the launch time of the packet that just arrived, the held back ones would add their wait to the RTT
+        if(!selectiveAck) {
+            echoed.setSequenceNumber(sequence);
+            echoed.setLaunchTime(arrivedLaunchTime);
+            echo(echoed);
+        }
+    }
+
+    // payload IDs have to come from the dictionary this client sent
+    private boolean known(Packet pckt){
+        if(!(pckt instanceof PayloadPacket))
+            return true;
+
+        int id = ((PayloadPacket) pckt).getPayloadId();
+        return payloads != null && id > 0 && id <= payloads.length;
+    }
+
+    // the sequenced mode drops packets older than the newest one, they are neither delivered nor answered
+    private boolean stale(Packet pckt){
+        if(mode != DeliveryMode.SEQUENCED)
+            return false;
+
+        int sequence = pckt.getSequenceNumber();
+        if(hasNewest && sequence - newest <= 0) {
+            stale++;
+            return true;
+        }
+
+        hasNewest = true;
+        newest = sequence;
+        return false;
+    }
+
+    // takes the slice of a fragment, the echo goes back without it
+    private void reassemble(Packet pckt){
+        if(!(pckt instanceof FragmentPacket))
+            return;
+
+        reassembler.add((FragmentPacket) pckt);
+        pckt.setMessage(null);
+    }
+
+    void logReceived(){
+        if(stale > 0)
+            Logger.info("Loopback sequenced delivery: {} stale packets dropped", stale);
+        if(reorder != null && reorder.getMaxOccupancy() > 0)
+        {
+            Logger.info("Loopback ordered delivery: {} packets held back, up to {} ms", heldBack, maxHeldFor);
+            Logger.info("Loopback ordered delivery: up to {} packets waiting", reorder.getMaxOccupancy());
+        }
+        logReassembly();
+    }
+
+    private void logReassembly(){
+        if(reassembler.getCompleted() + reassembler.getDropped() + reassembler.getPartial() > 0)
+        {
+            Logger.info("Loopback reassembly: {} messages completed ({} chars)", reassembler.getCompleted(),
+                    reassembler.getCompletedChars());
+            Logger.info("Loopback reassembly: {} dropped, {} partial", reassembler.getDropped(),
+                    reassembler.getPartial());
+        }
+    }
+
+    private void expand(Packet pckt){
+        if(!(pckt instanceof PayloadPacket))
+            return;
+
+        int sequence = pckt.getSequenceNumber();
+        if(hasHighest)
+            sequence = highest + (short) (sequence - highest);
+
+        if(!hasHighest || sequence - highest > 0) {
+            hasHighest = true;
+            highest = sequence;
+        }
+        pckt.setSequenceNumber(sequence);
+    }
+
+    private void echo(Packet pckt){
+        pckt.setServerSequence(serverSequence++);
+        send(pckt);
+    }
+
+    private void send(Object datagram){
+        if(wrapper == null) {
+            output.sendUDP(datagram);
+            return;
+        }
+
+        wrapper.datagram = datagram;
+        output.sendUDP(wrapper);
+    }
+
+    // one AckPacket per datagram, covering the latest sequence and the 64 before it, older ones are
+    // acknowledged alone
+    private void acknowledge(int sequence, long launchTime){
+        if(record(sequence, launchTime))
+            sendAck(launchTime);
+    }
+
+    // adds a sequence to the selective ACK, false if it was too old for it and got an ACK of its own
+    private boolean record(int sequence, long launchTime){
+        if(!hasLatest) {
+            hasLatest = true;
+            latest = sequence;
+            ackBits = 0;
+        }
+
+        int distance = sequence - latest;
+        if(distance > 0) {
+            ackBits = distance < AckPacket.BITS ? (ackBits << distance) | (1L << (distance - 1)) :
+                    distance == AckPacket.BITS ? 1L << (AckPacket.BITS - 1) : 0;
+            latest = sequence;
+        }
+        else if(distance < 0 && -distance <= AckPacket.BITS) {
+            ackBits |= 1L << (-distance - 1);
+        }
+        else if(distance < 0) {
+            ack.setLatestSequence(sequence);
+            ack.setAckBits(0);
+            ack.setLaunchTime(launchTime);
+            send(ack);
+            return false;
+        }
+        return true;
+    }
+
+    private void sendAck(long launchTime){
+        ack.setLatestSequence(latest);
+        ack.setAckBits(ackBits);
+        ack.setLaunchTime(launchTime);
+        send(ack);
+    }
+}
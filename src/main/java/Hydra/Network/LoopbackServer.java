@@ -0,0 +1,117 @@
+package Hydra.Network;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+import com.esotericsoftware.kryonet.Server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * Embedded stand-in for the remote R-UDP server on the loopback interface. It answers the InitialPacket
+ * handshake and acknowledges packets like the remote server, either by echoing every packet or with one
+ * selective AckPacket per datagram. Packets of the ordered mode are delivered in sequence. It takes the
+ * payload dictionary, so packets may carry their message's ID instead, answers a PacketBatch in one
+ * datagram and puts fragmented messages together again. Every channel of a client has a LoopbackChannel of
+ * its own.
+ */
+class LoopbackServer extends Server {
+
+    // server address that makes the clients start an embedded server
+    static final String HOST = "loopback";
+
+    private static final int WRITE_BUFFER_SIZE = 256_000;
+
+    private final boolean selectiveAck;
+
+    LoopbackServer(boolean selectiveAck)
+    {
+        super(WRITE_BUFFER_SIZE, UDPClient.OBJECT_BUFFER_SIZE);
+        this.selectiveAck = selectiveAck;
+
+        PacketRegistry.register(this);
+
+        addListener(new Listener(){
+            @Override
+            public void received(Connection connection, Object object) {
+                ((LoopbackConnection) connection).received(object);
+            }
+
+            @Override
+            public void disconnected(Connection connection) {
+                ((LoopbackConnection) connection).logReceived();
+            }
+        });
+    }
+
+    static InetAddress address(){
+        return InetAddress.getLoopbackAddress();
+    }
+
+    void open() throws IOException
+    {
+        bind(new InetSocketAddress(address(), UDPClient.TCP_PORT),
+                new InetSocketAddress(address(), UDPClient.UDP_PORT));
+        start();
+    }
+
+    @Override
+    protected Connection newConnection() {
+        return new LoopbackConnection();
+    }
+
+    // receive state of one client, only touched by the server update thread
+    private class LoopbackConnection extends Connection
+    {
+        private String[] payloads;
+        private LoopbackChannel[] channels = { channel(0, DeliveryMode.UNRELIABLE) };
+
+        // channels of the next simulation, null for the single one of clients which do not send a table
+        private PacketRegistry.ChannelTable table;
+
+        void received(Object object)
+        {
+            if(object instanceof PacketRegistry.ChannelDatagram)
+            {
+                PacketRegistry.ChannelDatagram datagram = (PacketRegistry.ChannelDatagram) object;
+                if(datagram.channel > 0 && datagram.channel < channels.length)
+                    channels[datagram.channel].received(datagram.datagram);
+            }
+            else if(object instanceof PacketRegistry.ChannelTable)
+            {
+                table = (PacketRegistry.ChannelTable) object;
+            }
+            else if(object instanceof PacketRegistry.PayloadDictionary)
+            {
+                // confirms it before the InitialPacket, so the client switches before it starts sending
+                payloads = ((PacketRegistry.PayloadDictionary) object).payloads;
+                sendTCP(object);
+            }
+            else if(object instanceof PacketRegistry.InitialPacket)
+            {
+                // every simulation starts with fresh channels
+                logReceived();
+
+                int count = table != null && table.modes != null ? Math.max(1, table.modes.length) : 1;
+                channels = new LoopbackChannel[count];
+                for(int i = 0; i < count; i++)
+                    channels[i] = channel(i, table != null ? table.modeOf(i) : DeliveryMode.UNRELIABLE);
+                table = null;
+
+                sendTCP(object);
+            }
+            else
+                channels[0].received(object);
+        }
+
+        private LoopbackChannel channel(int number, DeliveryMode mode){
+            return new LoopbackChannel(this::sendUDP, number, mode, selectiveAck, payloads, Clock.SYSTEM);
+        }
+
+        void logReceived(){
+            for(LoopbackChannel channel : channels)
+                channel.logReceived();
+        }
+    }
+}
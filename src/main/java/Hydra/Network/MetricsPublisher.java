@@ -0,0 +1,121 @@
+package Hydra.Network;
+
+import Hydra.Generic.NetworkListener;
+import Hydra.Statistics.SimulationStats;
+import Hydra.Statistics.StatsSnapshot;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands the simulation statistics to the NetworkListener on its callback executor at a fixed frame rate, with at
+ * most one frame queued at a time, so the UI cost does not depend on the packet rate. Network threads only
+ * update the SimulationStats and push RTT samples here without locks or allocation.
+ */
+class MetricsPublisher implements Runnable {
+
+    private static final int FRAMES_PER_SECOND = 30;
+    private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / FRAMES_PER_SECOND;
+
+    // RTT samples kept between two frames, further samples are dropped
+    private static final int RTT_SAMPLES = 1 << 10;
+
+    private final NetworkListener listener;
+    private final Executor callbacks;
+    private final SimulationStats stats;
+
+    // callback thread only
+    private final StatsSnapshot snapshot = new StatsSnapshot();
+    private volatile boolean reliable;
+
+    // single producer (receive thread) / single consumer (callback thread) ring of RTT samples
+    private final int[] sampleSequences = new int[RTT_SAMPLES];
+    private final long[] sampleTimes = new long[RTT_SAMPLES];
+    private volatile long samplesWritten, samplesRead;
+
+    private final AtomicBoolean framePending = new AtomicBoolean();
+    private final Runnable frame = this::deliver;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    MetricsPublisher(NetworkListener listener, Executor callbacks, SimulationStats stats){
+        this.listener = listener;
+        this.callbacks = callbacks;
+        this.stats = stats;
+    }
+
+    void publishRTT(int sequence, long time){
+        long written = samplesWritten;
+        if(written - samplesRead >= RTT_SAMPLES)
+            return;
+
+        int index = (int) (written & (RTT_SAMPLES - 1));
+        sampleSequences[index] = sequence;
+        sampleTimes[index] = time;
+        samplesWritten = written + 1;
+    }
+
+    synchronized void start(boolean reliable){
+        stop();
+
+        this.reliable = reliable;
+        samplesRead = samplesWritten;
+
+        running = true;
+        thread = new Thread(this, "Metrics publisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // stops publishing after one last frame
+    synchronized void stop(){
+        if(thread == null)
+            return;
+
+        running = false;
+        LockSupport.unpark(thread);
+        thread = null;
+        callbacks.execute(frame);
+    }
+
+    @Override
+    public void run(){
+        long nextFrame = System.nanoTime();
+
+        while (running)
+        {
+            nextFrame += FRAME_NANOS;
+            LockSupport.parkNanos(nextFrame - System.nanoTime());
+
+            if(running && framePending.compareAndSet(false, true))
+                callbacks.execute(frame);
+        }
+    }
+
+    // callback thread
+    private void deliver(){
+        framePending.set(false);
+
+        stats.snapshot(snapshot);
+
+        // reliable modes have always shown unconfirmed transmissions as lost
+        int sent = (int) snapshot.getSent();
+        int confirmed = (int) snapshot.getConfirmed();
+        int lost = reliable ? sent - confirmed : (int) snapshot.getLost();
+
+        listener.update(sent, snapshot.getWindowSize(), confirmed, lost);
+        listener.updateSequences(snapshot.getClientSequence(), snapshot.getServerSequence());
+
+        long read = samplesRead;
+        long written = samplesWritten;
+        for(; read < written; read++){
+            int index = (int) (read & (RTT_SAMPLES - 1));
+            listener.received(sampleSequences[index], sampleTimes[index]);
+        }
+        samplesRead = read;
+
+        listener.updateRTT();
+    }
+}
@@ -0,0 +1,390 @@
+package Hydra.Network;
+
+import Hydra.Logging.Logger;
+import com.esotericsoftware.kryonet.FrameworkMessage;
+import com.esotericsoftware.kryonet.KryoSerialization;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kryonet client protocol on plain NIO channels, the same the swarm speaks. Datagrams are serialized by the
+ * caller's thread straight into a direct buffer and written to a non-blocking DatagramChannel, without
+ * Kryonet's connection and listener machinery in between.
+ *
+ * The selector thread handles the handshake, keep alives and everything received. Writes from the sender
+ * thread and the control messages share one lock, it is uncontended while a simulation runs.
+ */
+class NioTransport implements Transport {
+
+    private enum State {
+        CLOSED,
+        CONNECTING,
+        REGISTERING,
+        CONNECTED
+    }
+
+    private static final int UPDATE_INTERVAL = 250;
+    private static final long REGISTER_INTERVAL = 100;
+    private static final long KEEP_ALIVE_INTERVAL = 8_000;
+    private static final long UDP_KEEP_ALIVE_INTERVAL = 19_000;
+    private static final long TIMEOUT = 12_000;
+
+    private final Selector selector;
+    private final Object registrationLock = new Object();
+    private final Object writeLock = new Object();
+
+    // Kryo is not thread safe, the selector thread reads with one and the writers share the other
+    private final KryoSerialization readSerialization = new KryoSerialization();
+    private final KryoSerialization writeSerialization = new KryoSerialization();
+
+    private final ByteBuffer udpRead = ByteBuffer.allocateDirect(UDPClient.OBJECT_BUFFER_SIZE);
+    private final ByteBuffer udpWrite = ByteBuffer.allocateDirect(UDPClient.OBJECT_BUFFER_SIZE);
+    private final ByteBuffer tcpRead = ByteBuffer.allocateDirect(UDPClient.OBJECT_BUFFER_SIZE);
+    private final ByteBuffer tcpWrite = ByteBuffer.allocateDirect(UDPClient.OBJECT_BUFFER_SIZE);
+
+    private Listener listener;
+    private volatile boolean shutdown = false;
+
+    private volatile State state = State.CLOSED;
+    private volatile SocketChannel tcp;
+    private volatile DatagramChannel udp;
+    private SelectionKey tcpKey;
+    private CountDownLatch registered;
+
+    private int connectionId;
+    private long nextRegisterAttempt;
+    private volatile long lastTcpRead, lastTcpWrite, lastUdpKeepAlive;
+
+    NioTransport(){
+        try {
+            selector = Selector.open();
+        } catch (IOException ex) {
+            throw new RuntimeException("Error opening selector.", ex);
+        }
+
+        PacketRegistry.register(readSerialization.getKryo());
+        PacketRegistry.register(writeSerialization.getKryo());
+    }
+
+    @Override
+    public void setListener(Listener listener){
+        this.listener = listener;
+    }
+
+    @Override
+    public void connect(int timeout, InetAddress host, int tcpPort, int udpPort) throws IOException {
+        close();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        SocketChannel tcp = SocketChannel.open();
+        DatagramChannel udp = DatagramChannel.open();
+
+        try {
+            tcp.socket().setTcpNoDelay(true);
+            tcp.socket().connect(new InetSocketAddress(host, tcpPort), timeout);
+            tcp.configureBlocking(false);
+
+            udp.configureBlocking(false);
+            udp.connect(new InetSocketAddress(host, udpPort));
+
+            synchronized (writeLock) {
+                tcpWrite.clear();
+            }
+            tcpRead.clear();
+
+            long now = System.currentTimeMillis();
+            lastTcpRead = lastTcpWrite = lastUdpKeepAlive = now;
+
+            // the selector thread waits on the lock, so registering does not block on its select
+            synchronized (registrationLock) {
+                selector.wakeup();
+                tcpKey = tcp.register(selector, SelectionKey.OP_READ);
+                udp.register(selector, SelectionKey.OP_READ);
+
+                this.tcp = tcp;
+                this.udp = udp;
+                this.registered = latch;
+                state = State.CONNECTING;
+            }
+        } catch (IOException ex) {
+            tcp.close();
+            udp.close();
+            throw ex;
+        }
+
+        try {
+            if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+                close();
+                throw new SocketTimeoutException("Connected, but timed out during UDP registration.");
+            }
+        } catch (InterruptedException ex) {
+            close();
+            throw new IOException("Interrupted while connecting", ex);
+        }
+
+        if (state != State.CONNECTED)
+            throw new IOException("Connection closed during registration.");
+    }
+
+    @Override
+    public boolean isConnected(){
+        return state == State.CONNECTED;
+    }
+
+    @Override
+    public void run(){
+        while (!shutdown)
+        {
+            // lets connect register its channels
+            synchronized (registrationLock) {}
+
+            try {
+                selector.select(UPDATE_INTERVAL);
+            } catch (IOException ex) {
+                Logger.error("Transport select", ex);
+                break;
+            }
+
+            long now = System.currentTimeMillis();
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext())
+            {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                try {
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.channel() == udp) {
+                        readUDP();
+                        continue;
+                    }
+
+                    if (key.isWritable())
+                        synchronized (writeLock) {
+                            flushTCP();
+                        }
+                    if (key.isReadable())
+                        readTCP(now);
+                } catch (IOException ex) {
+                    if (state != State.CLOSED)
+                        Logger.error("Transport connection lost", ex);
+                    close();
+                }
+            }
+
+            maintain(now);
+        }
+
+        close();
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            Logger.error("Transport selector close", ex);
+        }
+    }
+
+    private void readUDP() throws IOException {
+        DatagramChannel channel = udp;
+
+        while (channel != null)
+        {
+            udpRead.clear();
+            try {
+                if (channel.read(udpRead) <= 0)
+                    return;
+            } catch (PortUnreachableException ex) {
+                // nothing listens on the server's UDP port yet, the registration is repeated
+                return;
+            }
+
+            udpRead.flip();
+            received(readSerialization.read(null, udpRead));
+        }
+    }
+
+    private void readTCP(long now) throws IOException {
+        SocketChannel channel = tcp;
+        if (channel == null)
+            return;
+
+        if (channel.read(tcpRead) < 0)
+            throw new IOException("closed by server");
+
+        lastTcpRead = now;
+        tcpRead.flip();
+
+        Object object;
+        while ((object = TcpFraming.read(readSerialization, tcpRead)) != null)
+            received(object);
+
+        tcpRead.compact();
+    }
+
+    private void received(Object object){
+        if (object instanceof FrameworkMessage.RegisterTCP) {
+            connectionId = ((FrameworkMessage.RegisterTCP) object).connectionID;
+            state = State.REGISTERING;
+            nextRegisterAttempt = 0;
+        }
+        else if (object instanceof FrameworkMessage.RegisterUDP) {
+            state = State.CONNECTED;
+            CountDownLatch latch = registered;
+            if (latch != null)
+                latch.countDown();
+        }
+        else if (object instanceof FrameworkMessage.Ping) {
+            FrameworkMessage.Ping ping = (FrameworkMessage.Ping) object;
+            if (!ping.isReply) {
+                ping.isReply = true;
+                sendTCP(ping);
+            }
+        }
+        else if (!(object instanceof FrameworkMessage) && state == State.CONNECTED && listener != null) {
+            listener.received(object);
+        }
+    }
+
+    private void maintain(long now){
+        switch (state){
+            case REGISTERING:
+                // UDP is unreliable, so the registration is repeated until the server confirms it over TCP
+                if (now >= nextRegisterAttempt) {
+                    FrameworkMessage.RegisterUDP register = new FrameworkMessage.RegisterUDP();
+                    register.connectionID = connectionId;
+                    sendUDP(register);
+                    nextRegisterAttempt = now + REGISTER_INTERVAL;
+                }
+                break;
+
+            case CONNECTED:
+                // the server drops connections sending over TCP before their UDP registration
+                if (now - lastTcpWrite > KEEP_ALIVE_INTERVAL)
+                    sendTCP(FrameworkMessage.keepAlive);
+
+                // keeps NAT mappings open while no simulation runs
+                if (now - lastUdpKeepAlive > UDP_KEEP_ALIVE_INTERVAL) {
+                    sendUDP(FrameworkMessage.keepAlive);
+                    lastUdpKeepAlive = now;
+                }
+
+                if (now - lastTcpRead > TIMEOUT) {
+                    Logger.error("Transport timed out", new SocketTimeoutException("No data for " + TIMEOUT + " ms"));
+                    close();
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void sendUDP(Object object){
+        DatagramChannel channel = udp;
+        if (channel == null)
+            return;
+
+        synchronized (writeLock) {
+            udpWrite.clear();
+            writeSerialization.write(null, udpWrite, object);
+            udpWrite.flip();
+
+            try {
+                // a full socket buffer drops the datagram, as the network would
+                channel.write(udpWrite);
+            } catch (IOException ex) {
+                // ICMP port unreachable and the like only cost this datagram
+            }
+        }
+    }
+
+    @Override
+    public void sendTCP(Object object){
+        if (tcp == null)
+            return;
+
+        try {
+            synchronized (writeLock) {
+                TcpFraming.write(writeSerialization, tcpWrite, object);
+                lastTcpWrite = System.currentTimeMillis();
+                flushTCP();
+            }
+        } catch (IOException ex) {
+            Logger.error("Transport TCP write", ex);
+            close();
+        }
+    }
+
+    // holding the write lock
+    private void flushTCP() throws IOException {
+        SocketChannel channel = tcp;
+        if (channel == null)
+            return;
+
+        tcpWrite.flip();
+        channel.write(tcpWrite);
+        tcpWrite.compact();
+
+        // the rest is written by the selector thread once the socket accepts more
+        SelectionKey key = tcpKey;
+        if (key != null && key.isValid()) {
+            int ops = tcpWrite.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+                selector.wakeup();
+            }
+        }
+    }
+
+    @Override
+    public void close(){
+        boolean wasConnected;
+
+        synchronized (registrationLock) {
+            wasConnected = state == State.CONNECTED;
+            state = State.CLOSED;
+
+            try {
+                if (tcp != null)
+                    tcp.close();
+                if (udp != null)
+                    udp.close();
+            } catch (IOException ex) {
+                Logger.error("Transport close", ex);
+            }
+
+            tcp = null;
+            udp = null;
+            tcpKey = null;
+
+            if (registered != null) {
+                registered.countDown();
+                registered = null;
+            }
+        }
+
+        if (wasConnected && listener != null)
+            listener.disconnected();
+    }
+
+    @Override
+    public void stop(){
+        shutdown = true;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,124 @@
+package Hydra.Network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket on the sender's clock, System.nanoTime unless it runs in virtual time. Tokens accumulate at the configured rate up to the burst size,
+ * so a stalled sender catches up by at most one burst and the long run average stays exact.
+ */
+class Pacer {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // below this the remaining wait is spun instead of parked, parking overshoots by ~50-100us
+    private static final long SPIN_THRESHOLD = TimeUnit.MICROSECONDS.toNanos(100);
+
+    // the automatic burst holds 1/100 s worth of packets
+    private static final int AUTO_BURST_DIVISOR = 100;
+
+    private final Clock clock;
+
+    private volatile double rate;
+    private volatile int burst;
+
+    private double tokens;
+    private long lastRefill;
+
+    Pacer(double rate, int burst){
+        this(rate, burst, Clock.SYSTEM);
+    }
+
+    // only the non-blocking methods follow a clock which does not run by itself
+    Pacer(double rate, int burst, Clock clock){
+        this.clock = clock;
+        setRate(rate);
+        setBurst(burst);
+        reset();
+    }
+
+    void setRate(double packetsPerSecond){
+        this.rate = Math.max(1, packetsPerSecond);
+    }
+
+    double getRate(){
+        return rate;
+    }
+
+    // 0 or less sizes the burst to 10 ms worth of packets
+    void setBurst(int packets){
+        this.burst = packets;
+    }
+
+    int getBurst(){
+        int b = burst;
+        return b > 0 ? b : Math.max(1, (int) (rate / AUTO_BURST_DIVISOR));
+    }
+
+    void reset(){
+        tokens = 0;
+        lastRefill = clock.nanos();
+    }
+
+    /**
+     * Blocks until at least one packet may be sent and returns how many may go out right now.
+     * Only the sender thread calls this.
+     */
+    int acquire() throws InterruptedException {
+        return acquire(Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #acquire()}, but gives up after the given time and returns 0 then, so the sender can
+     * serve other deadlines in between.
+     */
+    int acquire(long maxWaitNanos) throws InterruptedException {
+        refill();
+        long start = lastRefill;
+
+        while (tokens < 1) {
+            long remaining = maxWaitNanos - (lastRefill - start);
+            if (remaining <= 0)
+                return 0;
+
+            long wait = Math.min(remaining, (long) ((1 - tokens) * NANOS_PER_SECOND / rate));
+
+            if (wait > SPIN_THRESHOLD)
+                LockSupport.parkNanos(wait - SPIN_THRESHOLD);
+            else
+                Thread.yield();
+
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            refill();
+        }
+
+        int granted = (int) tokens;
+        tokens -= granted;
+        return granted;
+    }
+
+    /**
+     * Non-blocking variant of {@link #acquire()} for event loops: returns how many packets may go out now,
+     * possibly none.
+     */
+    int poll(){
+        refill();
+
+        int granted = (int) tokens;
+        tokens -= granted;
+        return granted;
+    }
+
+    // time until the next packet may be sent, 0 if one is available already
+    long nanosUntilNext(){
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * NANOS_PER_SECOND / rate);
+    }
+
+    private void refill(){
+        long now = clock.nanos();
+        tokens = Math.min(getBurst(), tokens + (now - lastRefill) * rate / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,298 @@
+package Hydra.Network;
+
+import Hydra.Packets.AckPacket;
+import Hydra.Packets.FragmentPacket;
+import Hydra.Packets.Packet;
+import Hydra.Packets.PacketContainer;
+import Hydra.Packets.PayloadPacket;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hand-written Kryo serializers for the per-datagram types. The byte layout is the one of Kryo's
+ * FieldSerializer (fields by name, zigzag varints, fixed float), so servers with the default serializers
+ * still understand them, but nothing is looked up by reflection and nothing is allocated per datagram.
+ *
+ * Decoding reuses one instance per serializer, so a received Packet, PacketContainer or AckPacket is only
+ * valid until the next one is read. Receivers handle them on the network thread and keep the values, never the object.
+ */
+class PacketCodec {
+
+    static class PacketSerializer extends Serializer<Packet> {
+
+        private final Packet decoded = new Packet();
+
+        // the last message read and its encoding, repeated messages are matched instead of decoded
+        private String message;
+        private byte[] encodedMessage;
+
+        // the last message written, ByteBufferOutput copies strings through a temporary array
+        private String writtenMessage;
+        private byte[] writtenEncoding;
+
+        @Override
+        public void write(Kryo kryo, Output output, Packet packet) {
+            output.writeInt(packet.getServerSequence(), false);
+            output.writeFloat(packet.getDropChance());
+            output.writeLong(packet.getLaunchTime(), false);
+            writeMessage(output, packet.getMessage());
+            output.writeInt(packet.getSequenceNumber(), false);
+        }
+
+        private void writeMessage(Output output, String value){
+            if (value == null) {
+                output.writeString(null);
+                return;
+            }
+
+            if (value != writtenMessage) {
+                writtenEncoding = encode(value);
+                writtenMessage = value;
+            }
+            output.writeBytes(writtenEncoding);
+        }
+
+        @Override
+        public Packet read(Kryo kryo, Input input, Class<Packet> type) {
+            return read(input, decoded);
+        }
+
+        Packet read(Input input, Packet into) {
+            into.setServerSequence(input.readInt(false));
+            into.setDropChance(input.readFloat());
+            into.setLaunchTime(input.readLong(false));
+            into.setMessage(readMessage(input));
+            into.setSequenceNumber(input.readInt(false));
+            return into;
+        }
+
+        private String readMessage(Input input){
+            byte[] expected = encodedMessage;
+
+            if (expected != null && input.limit() - input.position() >= expected.length) {
+                int start = input.position();
+                int i = 0;
+                while (i < expected.length && input.readByte() == expected[i])
+                    i++;
+
+                if (i == expected.length)
+                    return message;
+
+                input.setPosition(start);
+            }
+
+            // a new message, only happens when the simulation changes
+            message = input.readString();
+
+            encodedMessage = message != null ? encode(message) : null;
+            return message;
+        }
+
+        private static byte[] encode(String value){
+            Output output = new Output(32, -1);
+            output.writeString(value);
+            return output.toBytes();
+        }
+    }
+
+    // compact header for servers which took the dictionary: 16 bit sequence, varint launch time and payload ID.
+    // It has no room for a message, inline and fragmented ones always go with the full header
+    static class PayloadPacketSerializer extends Serializer<PayloadPacket> {
+
+        private final PayloadPacket decoded = new PayloadPacket();
+
+        @Override
+        public void write(Kryo kryo, Output output, PayloadPacket packet) {
+            output.writeShort(packet.getSequenceNumber());
+            output.writeLong(packet.getLaunchTime(), true);
+            output.writeInt(packet.getPayloadId(), true);
+        }
+
+        @Override
+        public PayloadPacket read(Kryo kryo, Input input, Class<PayloadPacket> type) {
+            return read(input, decoded);
+        }
+
+        // the sequence is only its low 16 bits, the receiver expands it
+        PayloadPacket read(Input input, PayloadPacket into) {
+            into.setSequenceNumber(input.readShort() & 0xFFFF);
+            into.setLaunchTime(input.readLong(true));
+            into.setPayloadId(input.readInt(true));
+            return into;
+        }
+    }
+
+    // a whole message split over several datagrams carries its position, the slice travels as the message
+    static class FragmentPacketSerializer extends Serializer<FragmentPacket> {
+
+        private final FragmentPacket decoded = new FragmentPacket();
+
+        @Override
+        public void write(Kryo kryo, Output output, FragmentPacket fragment) {
+            output.writeInt(fragment.getSequenceNumber(), false);
+            output.writeLong(fragment.getLaunchTime(), false);
+            output.writeInt(fragment.getMessageId(), true);
+            output.writeInt(fragment.getIndex(), true);
+            output.writeInt(fragment.getCount(), true);
+            output.writeString(fragment.getMessage());
+        }
+
+        @Override
+        public FragmentPacket read(Kryo kryo, Input input, Class<FragmentPacket> type) {
+            return read(input, decoded);
+        }
+
+        FragmentPacket read(Input input, FragmentPacket into) {
+            into.setSequenceNumber(input.readInt(false));
+            into.setLaunchTime(input.readLong(false));
+            into.setMessageId(input.readInt(true));
+            into.setIndex(input.readInt(true));
+            into.setCount(input.readInt(true));
+            into.setMessage(input.readString());
+            return into;
+        }
+    }
+
+    /**
+     * The packet serializers, and the elements of containers written as FieldSerializer writes a
+     * CopyOnWriteArrayList: every packet after its class id. Decoded elements are distinct per position.
+     */
+    static class PacketElements {
+
+        final PacketSerializer packets = new PacketSerializer();
+        final PayloadPacketSerializer payloadPackets = new PayloadPacketSerializer();
+        final FragmentPacketSerializer fragments = new FragmentPacketSerializer();
+
+        private final ArrayList<Packet> decodedPackets = new ArrayList<>();
+        private final ArrayList<PayloadPacket> decodedPayloadPackets = new ArrayList<>();
+        private final ArrayList<FragmentPacket> decodedFragments = new ArrayList<>();
+
+        void write(Kryo kryo, Output output, Packet packet) {
+            if (packet instanceof PayloadPacket) {
+                kryo.writeClass(output, PayloadPacket.class);
+                payloadPackets.write(kryo, output, (PayloadPacket) packet);
+            }
+            else if (packet instanceof FragmentPacket) {
+                kryo.writeClass(output, FragmentPacket.class);
+                fragments.write(kryo, output, (FragmentPacket) packet);
+            }
+            else {
+                kryo.writeClass(output, Packet.class);
+                packets.write(kryo, output, packet);
+            }
+        }
+
+        // null for a null element
+        Packet read(Kryo kryo, Input input, int index) {
+            Registration registration = kryo.readClass(input);
+            if (registration == null)
+                return null;
+
+            if (registration.getType() == PayloadPacket.class) {
+                while (decodedPayloadPackets.size() <= index)
+                    decodedPayloadPackets.add(new PayloadPacket());
+                return payloadPackets.read(input, decodedPayloadPackets.get(index));
+            }
+
+            if (registration.getType() == FragmentPacket.class) {
+                while (decodedFragments.size() <= index)
+                    decodedFragments.add(new FragmentPacket());
+                return fragments.read(input, decodedFragments.get(index));
+            }
+
+            while (decodedPackets.size() <= index)
+                decodedPackets.add(new Packet());
+            return packets.read(input, decodedPackets.get(index));
+        }
+    }
+
+    /**
+     * Writes what FieldSerializer writes for the CopyOnWriteArrayList field, a class id, the size and every
+     * element with its class id, and reads into one reused container of distinct packets.
+     */
+    static class PacketContainerSerializer extends Serializer<PacketContainer> {
+
+        private final PacketElements elements;
+        private final PacketContainer decoded;
+
+        // decodes into the given container, a PacketBatch for batches
+        PacketContainerSerializer(PacketElements elements, PacketContainer decoded){
+            this.elements = elements;
+            this.decoded = decoded;
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, PacketContainer container) {
+            int size = container.getSize();
+
+            kryo.writeClass(output, CopyOnWriteArrayList.class);
+            output.writeInt(size, true);
+
+            for (int i = 0; i < size; i++)
+                elements.write(kryo, output, container.get(i));
+        }
+
+        @Override
+        public PacketContainer read(Kryo kryo, Input input, Class<PacketContainer> type) {
+            decoded.clear();
+
+            if (kryo.readClass(input) == null)
+                return decoded;
+
+            int size = input.readInt(true);
+            for (int i = 0; i < size; i++)
+            {
+                Packet packet = elements.read(kryo, input, i);
+                if (packet != null)
+                    decoded.add(packet);
+            }
+
+            return decoded;
+        }
+    }
+
+    // the channel ahead of the datagram with its class, decoded into one reused envelope
+    static class ChannelDatagramSerializer extends Serializer<PacketRegistry.ChannelDatagram> {
+
+        private final PacketRegistry.ChannelDatagram decoded = new PacketRegistry.ChannelDatagram();
+
+        @Override
+        public void write(Kryo kryo, Output output, PacketRegistry.ChannelDatagram datagram) {
+            output.writeInt(datagram.channel, true);
+            kryo.writeClassAndObject(output, datagram.datagram);
+        }
+
+        @Override
+        public PacketRegistry.ChannelDatagram read(Kryo kryo, Input input, Class<PacketRegistry.ChannelDatagram> type) {
+            decoded.channel = input.readInt(true);
+            decoded.datagram = kryo.readClassAndObject(input);
+            return decoded;
+        }
+    }
+
+    static class AckPacketSerializer extends Serializer<AckPacket> {
+
+        private final AckPacket decoded = new AckPacket();
+
+        @Override
+        public void write(Kryo kryo, Output output, AckPacket ack) {
+            output.writeLong(ack.getAckBits(), false);
+            output.writeInt(ack.getLatestSequence(), false);
+            output.writeLong(ack.getLaunchTime(), false);
+        }
+
+        @Override
+        public AckPacket read(Kryo kryo, Input input, Class<AckPacket> type) {
+            decoded.setAckBits(input.readLong(false));
+            decoded.setLatestSequence(input.readInt(false));
+            decoded.setLaunchTime(input.readLong(false));
+            return decoded;
+        }
+    }
+}
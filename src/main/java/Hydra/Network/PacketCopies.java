@@ -0,0 +1,39 @@
+package Hydra.Network;
+
+import Hydra.Packets.FragmentPacket;
+import Hydra.Packets.Packet;
+import Hydra.Packets.PayloadPacket;
+
+import java.util.ArrayList;
+
+// reusable copies of packets by position, of the same type as the original
+class PacketCopies {
+
+    private final ArrayList<Packet> packets = new ArrayList<>();
+    private final ArrayList<PayloadPacket> payloadPackets = new ArrayList<>();
+    private final ArrayList<FragmentPacket> fragments = new ArrayList<>();
+
+    // valid until the same position is copied again
+    Packet copy(Packet source, int index){
+        Packet copy;
+
+        if (source instanceof PayloadPacket) {
+            while (payloadPackets.size() <= index)
+                payloadPackets.add(new PayloadPacket());
+            copy = payloadPackets.get(index);
+        }
+        else if (source instanceof FragmentPacket) {
+            while (fragments.size() <= index)
+                fragments.add(new FragmentPacket());
+            copy = fragments.get(index);
+        }
+        else {
+            while (packets.size() <= index)
+                packets.add(new Packet());
+            copy = packets.get(index);
+        }
+
+        copy.set(source);
+        return copy;
+    }
+}
@@ -1,23 +1,153 @@
 package Hydra.Network;
 
+import Hydra.Packets.AckPacket;
+import Hydra.Packets.FragmentPacket;
 import Hydra.Packets.Packet;
+import Hydra.Packets.PacketBatch;
 import Hydra.Packets.PacketContainer;
+import Hydra.Packets.PayloadPacket;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.EndPoint;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 class PacketRegistry {
 
+    // class id + varint sequences + float + varint long
+    private static final int MAX_PACKET_HEADER_SIZE = 2 + 5 + 4 + 10 + 5;
+
+    // class id + 16 bit sequence + varint relative launch time + varint payload id
+    static final int PAYLOAD_PACKET_SIZE = 2 + 2 + 10 + 5;
+
+    // class id + varint sequence + varint long + varint message id, index and count
+    private static final int FRAGMENT_HEADER_SIZE = 2 + 5 + 10 + 5 + 5 + 5;
+
+    // class ids + list size of a PacketContainer
+    static final int CONTAINER_OVERHEAD = 2 + 2 + 5;
+
+    // class id + varint channel ahead of the datagram of a channel other than the first
+    static final int CHANNEL_OVERHEAD = 2 + 5;
+
     static void register (EndPoint endPoint) {
-        Kryo kryo = endPoint.getKryo();
+        register(endPoint.getKryo());
+    }
+
+    // the order defines the class ids, it has to match the server
+    static void register (Kryo kryo) {
+        PacketCodec.PacketElements elements = new PacketCodec.PacketElements();
 
         kryo.register(CopyOnWriteArrayList.class);
-        kryo.register(PacketContainer.class);
-        kryo.register(Packet.class);
+        kryo.register(PacketContainer.class, new PacketCodec.PacketContainerSerializer(elements, new PacketContainer()));
+        kryo.register(Packet.class, elements.packets);
         kryo.register(InitialPacket.class);
+        kryo.register(AckPacket.class, new PacketCodec.AckPacketSerializer());
+
+        // extensions the remote server does not know, only sent to servers which confirmed them
+        kryo.register(String[].class);
+        kryo.register(PayloadDictionary.class);
+        kryo.register(PayloadPacket.class, elements.payloadPackets);
+        kryo.register(PacketBatch.class, new PacketCodec.PacketContainerSerializer(elements, new PacketBatch()));
+        kryo.register(FragmentPacket.class, elements.fragments);
+        kryo.register(ChannelTable.class);
+        kryo.register(ChannelDatagram.class, new PacketCodec.ChannelDatagramSerializer());
+    }
+
+    // upper bound of a Kryo encoded Packet carrying the given message
+    static int maxPacketSize(String message) {
+        return MAX_PACKET_HEADER_SIZE + maxStringSize(message);
+    }
+
+    static int maxPacketSize(Packet packet) {
+        if (packet instanceof PayloadPacket)
+            return PAYLOAD_PACKET_SIZE;
+        if (packet instanceof FragmentPacket)
+            return maxFragmentSize(packet.getMessage());
+        return maxPacketSize(packet.getMessage());
+    }
+
+    static int maxFragmentSize(String slice) {
+        return FRAGMENT_HEADER_SIZE + maxStringSize(slice);
+    }
+
+    // Kryo writes chars as UTF-8 of up to 3 bytes after a length of up to 5
+    static int maxStringSize(String value) {
+        if (value == null)
+            return 1;
+
+        int bytes = 5;
+        for (int i = 0; i < value.length(); i++)
+            bytes += charSize(value.charAt(i));
+        return bytes;
+    }
+
+    static int charSize(char c) {
+        return c <= 0x7F ? 1 : c <= 0x7FF ? 2 : 3;
     }
 
     static public class InitialPacket{
         public int sequenceNumber = 0;
     }
+
+    /**
+     * Sent over TCP right before the InitialPacket. A server which knows it answers with the same dictionary
+     * before its InitialPacket, from then on packets are sent in the compact form of PayloadPacket.
+     */
+    static public class PayloadDictionary{
+        public String[] payloads;
+
+        public PayloadDictionary(){}
+
+        PayloadDictionary(String... payloads){
+            this.payloads = payloads;
+        }
+
+        // 0 if the message is not in the dictionary
+        int idOf(String message){
+            if (payloads != null)
+                for (int i = 0; i < payloads.length; i++)
+                    if (payloads[i] != null && payloads[i].equals(message))
+                        return i + 1;
+            return 0;
+        }
+    }
+
+    /**
+     * Sent over TCP before the dictionary and the InitialPacket when a simulation runs several channels or
+     * a sequenced one: the delivery mode of every channel by number.
+     */
+    static public class ChannelTable{
+        public String[] modes;
+
+        public ChannelTable(){}
+
+        ChannelTable(DeliveryMode... modes){
+            this.modes = new String[modes.length];
+            for (int i = 0; i < modes.length; i++)
+                this.modes[i] = modes[i].toString();
+        }
+
+        // UNRELIABLE for unknown channels
+        DeliveryMode modeOf(int channel){
+            try {
+                return modes != null && channel >= 0 && channel < modes.length ?
+                        DeliveryMode.parse(modes[channel]) : DeliveryMode.UNRELIABLE;
+            } catch (IllegalArgumentException ex) {
+                return DeliveryMode.UNRELIABLE;
+            }
+        }
+    }
+
+    /**
+     * A datagram of a channel other than the first, which sends its datagrams as they are. Both sides wrap
+     * what the channel alone would send, one reused instance per channel.
+     */
+    static public class ChannelDatagram{
+        int channel;
+        Object datagram;
+
+        public ChannelDatagram(){}
+
+        ChannelDatagram(int channel){
+            this.channel = channel;
+        }
+    }
 }
@@ -0,0 +1,178 @@
+package Hydra.Network;
+
+import Hydra.Packets.FragmentPacket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Puts fragmented messages together again in a bounded buffer. At most a fixed number of partial messages
+ * and characters of slices are held, the oldest partial message is dropped to make room for a new one.
+ * Fragments of messages which were completed or dropped recently are ignored.
+ *
+ * Not thread safe, the loopback server feeds it from its update thread.
+ */
+class Reassembler {
+
+    // recent completed and dropped message IDs, late retransmissions of them are ignored
+    private static final int FINISHED = 256;
+
+    private final int maxMessages;
+    private final int maxChars;
+
+    // oldest first
+    private final ArrayList<Partial> partials = new ArrayList<>();
+    private final ArrayList<Partial> free = new ArrayList<>();
+    private int chars = 0;
+
+    private final int[] finished = new int[FINISHED];
+    private int finishedNext = 0, finishedKnown = 0;
+
+    private long completed, dropped, completedChars;
+
+    private static class Partial {
+        int messageId;
+        int received;
+        int chars;
+        String[] slices;
+    }
+
+    Reassembler(int maxMessages, int maxChars){
+        this.maxMessages = maxMessages;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Takes the slice of a fragment, returns the whole message once its last fragment arrived, else null.
+     */
+    String add(FragmentPacket fragment){
+        int id = fragment.getMessageId();
+        int count = fragment.getCount();
+        int index = fragment.getIndex();
+        String slice = fragment.getMessage();
+
+        if (slice == null || count <= 0 || count > maxChars || index < 0 || index >= count || isFinished(id))
+            return null;
+
+        Partial partial = find(id);
+        if (partial == null) {
+            if (count == 1) {
+                finish(id);
+                completed++;
+                completedChars += slice.length();
+                return slice;
+            }
+            partial = start(id, count);
+        }
+        else if (partial.slices.length != count || partial.slices[index] != null)
+            return null; // duplicate
+
+        // a message larger than the buffer can never complete
+        if (slice.length() > maxChars - chars && !makeRoom(slice.length(), partial)) {
+            drop(partial);
+            return null;
+        }
+
+        partial.slices[index] = slice;
+        partial.received++;
+        partial.chars += slice.length();
+        chars += slice.length();
+
+        if (partial.received < count)
+            return null;
+
+        StringBuilder message = new StringBuilder(partial.chars);
+        for (String part : partial.slices)
+            message.append(part);
+
+        completed++;
+        completedChars += partial.chars;
+        release(partial);
+        finish(id);
+        return message.toString();
+    }
+
+    // forgets everything, for the next simulation
+    void clear(){
+        while (!partials.isEmpty())
+            release(partials.get(0));
+        finishedNext = finishedKnown = 0;
+        completed = dropped = completedChars = 0;
+    }
+
+    long getCompleted(){
+        return completed;
+    }
+
+    long getDropped(){
+        return dropped;
+    }
+
+    long getCompletedChars(){
+        return completedChars;
+    }
+
+    int getPartial(){
+        return partials.size();
+    }
+
+    private Partial find(int id){
+        for (int i = 0; i < partials.size(); i++)
+            if (partials.get(i).messageId == id)
+                return partials.get(i);
+        return null;
+    }
+
+    private Partial start(int id, int count){
+        if (partials.size() >= maxMessages)
+            drop(partials.get(0));
+
+        Partial partial = free.isEmpty() ? new Partial() : free.remove(free.size() - 1);
+        partial.messageId = id;
+        partial.received = 0;
+        partial.chars = 0;
+        if (partial.slices == null || partial.slices.length != count)
+            partial.slices = new String[count];
+
+        partials.add(partial);
+        return partial;
+    }
+
+    // drops the oldest other partial messages until the slice fits
+    private boolean makeRoom(int size, Partial keep){
+        while (size > maxChars - chars)
+        {
+            Partial oldest = partials.get(0) != keep ? partials.get(0) : partials.size() > 1 ? partials.get(1) : null;
+            if (oldest == null)
+                return false;
+            drop(oldest);
+        }
+        return true;
+    }
+
+    private void drop(Partial partial){
+        dropped++;
+        finish(partial.messageId);
+        release(partial);
+    }
+
+    private void release(Partial partial){
+        partials.remove(partial);
+        chars -= partial.chars;
+        Arrays.fill(partial.slices, null);
+        free.add(partial);
+    }
+
+    private void finish(int id){
+        finished[finishedNext] = id;
+        finishedNext = (finishedNext + 1) % FINISHED;
+        finishedKnown = Math.min(finishedKnown + 1, FINISHED);
+    }
+
+    private boolean isFinished(int id){
+        for (int i = 0; i < finishedKnown; i++)
+            if (finished[i] == id)
+                return true;
+        return false;
+    }
+}
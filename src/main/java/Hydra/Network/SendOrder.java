@@ -0,0 +1,59 @@
+package Hydra.Network;
+
+import java.util.Arrays;
+
+/**
+ * Sequences in the order they were last sent, so the one sent longest ago is always first.
+ * Grows when full instead of boxing, sender thread only.
+ */
+class SendOrder {
+
+    private int[] sequences;
+    private int mask;
+    private int first = 0;
+    private int size = 0;
+
+    // capacity is rounded up to a power of two
+    SendOrder(int capacity){
+        int length = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        sequences = new int[length];
+        mask = length - 1;
+    }
+
+    void add(int sequence){
+        if (size == sequences.length)
+            grow();
+
+        sequences[(first + size) & mask] = sequence;
+        size++;
+    }
+
+    // only valid while it is not empty
+    int peek(){
+        return sequences[first];
+    }
+
+    int poll(){
+        int sequence = sequences[first];
+        first = (first + 1) & mask;
+        size--;
+        return sequence;
+    }
+
+    boolean isEmpty(){
+        return size == 0;
+    }
+
+    int size(){
+        return size;
+    }
+
+    private void grow(){
+        int[] grown = Arrays.copyOf(sequences, sequences.length * 2);
+
+        // the part that wrapped around moves behind the old end
+        System.arraycopy(sequences, 0, grown, sequences.length, first);
+        sequences = grown;
+        mask = grown.length - 1;
+    }
+}
@@ -0,0 +1,585 @@
+package Hydra.Network;
+
+import Hydra.Packets.AckPacket;
+import Hydra.Packets.Packet;
+import Hydra.Packets.PacketBatch;
+import Hydra.Packets.PacketContainer;
+import Hydra.Packets.PacketWindow;
+import Hydra.Packets.PayloadPacket;
+import Hydra.Packets.ReorderBuffer;
+import Hydra.Statistics.RttEstimator;
+import Hydra.Statistics.SimulationStats;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Sender and ACK logic of one simulated connection, independent of threads and transport.
+ * One thread calls {@link #sendNew} and {@link #resend}, acknowledgements may come from another one.
+ */
+class SimulationEngine {
+
+    interface Output {
+        void sendUDP(Object object);
+    }
+
+    private static final long DROP_RELIABLE_PCKT_TIME = 5_000;
+    private static final int MAX_TRANSMISSIONS = 8;
+
+    // compact sequences are expanded around the newest one the receiver saw, so fewer than 2^15 may be in flight
+    private static final int COMPACT_WINDOW = (1 << 15) - 1;
+
+    private final boolean reliable, ordered;
+    private final String msg;
+    private final Impairment link;
+    private final Coalescer coalescer;
+    private final Clock clock;
+    private final SimulationStats stats;
+    private final CongestionController congestion;
+    private final MetricsPublisher metrics;
+    private final Fragmenter fragmenter;
+    private final Consumer<Packet> delivered;
+
+    // ordered mode: acknowledged sequences are delivered in order, time of the datagram they came with
+    private final ReorderBuffer reorder;
+    private long receivedAt;
+
+    private volatile float loseChance;
+    private volatile int mtu;
+
+    // records what this engine sends and gets back, null if nothing is captured
+    private volatile EventCapture capture;
+
+    // ID of msg in the dictionary the server confirmed, 0 sends the message itself with the full header
+    private volatile int payloadId = 0;
+    private volatile long epoch;
+
+    private volatile int _sequenceNumber = 0;
+    private final AtomicInteger lastACK = new AtomicInteger(0);
+    private final PacketWindow history;
+
+    // reused MTU bounded datagram for the ordered mode
+    private final PacketContainer container = new PacketContainer();
+    private final ArrayList<Packet> batch = new ArrayList<>();
+
+    // reliable modes: the sent packets in the order they went out, one queue per number of transmissions.
+    // Their timeouts are the same, so the first of each queue is the next one due. The ordered mode sends
+    // new packets from the first one not sent yet.
+    private final SendOrder[] sendOrder;
+    private int unsent = 0;
+    private volatile int packetSize;
+
+    // impairment, congestion and metrics are optional
+    SimulationEngine(boolean reliable, boolean ordered, float loseChance, String msg, int windowCapacity, int mtu,
+                     Output output, ImpairmentConfig impairment, SimulationStats stats,
+                     CongestionController congestion, MetricsPublisher metrics){
+        this(reliable, ordered, loseChance, msg, windowCapacity, mtu, output, impairment, stats, congestion, metrics,
+                Clock.SYSTEM);
+    }
+
+    // the clock times the impairment and batches, the callers pass the current time of the same clock
+    SimulationEngine(boolean reliable, boolean ordered, float loseChance, String msg, int windowCapacity, int mtu,
+                     Output output, ImpairmentConfig impairment, SimulationStats stats,
+                     CongestionController congestion, MetricsPublisher metrics, Clock clock){
+        this.reliable = reliable;
+        this.ordered = ordered;
+        this.msg = msg;
+        this.stats = stats;
+        this.congestion = congestion;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.history = new PacketWindow(windowCapacity);
+        this.fragmenter = new Fragmenter(msg, windowCapacity, stats);
+        this.delivered = this::delivered;
+        this.reorder = ordered ? new ReorderBuffer(windowCapacity, (sequence, launchTime, heldFor) ->
+                stats.recordDelivery(heldFor, receivedAt - launchTime)) : null;
+        this.sendOrder = new SendOrder[reliable ? RttEstimator.BACKOFF_LIMIT : 0];
+        for (int i = 0; i < sendOrder.length; i++)
+            sendOrder[i] = new SendOrder(Math.min(windowCapacity, 1 << 10));
+        this.packetSize = PacketRegistry.maxPacketSize(msg);
+        this.link = new Impairment(impairment != null ? impairment : new ImpairmentConfig(), 0, output, clock);
+        this.coalescer = new Coalescer(link, mtu, clock, this::batchDropped);
+
+        setLoseChance(loseChance);
+        setMtu(mtu);
+    }
+
+    /**
+     * One turn of a sender: up to the given number of new packets, then what is owed.
+     */
+    void send(int count, long now){
+        sendNew(count, now);
+        resend(now);
+    }
+
+    // a congestion controller drives the pacer's rate, without one the pacer keeps the configured rate
+    void pace(Pacer pacer){
+        if (congestion != null)
+            pacer.setRate(congestion.getRate());
+    }
+
+    /**
+     * Creates and sends up to the given number of new packets.
+     */
+    void sendNew(int count, long now){
+        for (int i = 0; i < count; i++)
+        {
+            if (reliable) {
+
+                // a full window stalls new data until acknowledgements arrive
+                if (payloadId != 0 ? history.isFull(COMPACT_WINDOW) : history.isFull())
+                    break;
+
+                final Packet pckt = newPacket(now);
+                history.add(pckt);
+
+                if (!ordered) {
+                    boolean passed = coalescer.send(pckt);
+
+                    markSent(pckt.getSequenceNumber(), now);
+                    stats.incrementSent();
+                    captureSent(EventCapture.Type.SEND, pckt.getSequenceNumber(), passed, now);
+                }
+            }
+            else // NOT RELIABLE && NOT ORDERED
+            {
+                final Packet pckt = newPacket(now);
+                final boolean passed = coalescer.send(pckt);
+                captureSent(EventCapture.Type.SEND, pckt.getSequenceNumber(), passed, now);
+
+                if (passed) {
+
+                    // the window only tracks launch times here, the oldest entry gives way when full
+                    if (!history.add(pckt)) {
+                        Packet evicted = history.evictOldest();
+                        if (evicted != null) {
+                            stats.incrementLost();
+                            fragmenter.resolved(evicted, false);
+                            capture(EventCapture.Type.LOST, evicted.getSequenceNumber(), 1, now);
+                        }
+                        history.add(pckt);
+                    }
+                }else {
+                    stats.incrementLost();
+                    fragmenter.resolved(pckt, false);
+                    capture(EventCapture.Type.LOST, pckt.getSequenceNumber(), 1, now);
+                }
+
+                stats.incrementSent();
+            }
+        }
+    }
+
+    private Packet newPacket(long now){
+        if (fragmenter.fragmenting(mtu))
+            return fragmenter.next(_sequenceNumber++, now, loseChance, mtu);
+
+        int id = payloadId;
+        return id != 0 ? new PayloadPacket(_sequenceNumber++, now - epoch, msg, id, loseChance)
+                : new Packet(_sequenceNumber++, now, msg, loseChance);
+    }
+
+    /**
+     * Sends what is owed: due packets in ordered mode, expired ones in unordered mode, the datagrams
+     * the impairment held back and a batch whose deadline passed.
+     */
+    void resend(long now){
+        if (reliable) {
+
+            if (ordered) // complete implementation
+            {
+                sendDue(now);
+            }
+            else
+            {
+                retransmitExpired(now);
+            }
+        }
+
+        coalescer.flush();
+        link.flush();
+    }
+
+    // time until held back datagrams, a batch or a retransmission are due, Long.MAX_VALUE if there are none
+    long nanosUntilNext(){
+        return Math.min(Math.min(link.nanosUntilNext(), coalescer.nanosUntilNext()), nanosUntilTimeout());
+    }
+
+    // time until the backed off RTO of the packet sent longest ago expires, sender thread only
+    private long nanosUntilTimeout(){
+        RttEstimator estimator = stats.getRtt().getEstimator();
+        long earliest = Long.MAX_VALUE;
+
+        for (SendOrder queue : sendOrder)
+        {
+            while (!queue.isEmpty() && history.get(queue.peek()) == null)
+                queue.poll(); // acknowledged
+
+            if (!queue.isEmpty()) {
+                int seq = queue.peek();
+                earliest = Math.min(earliest, history.getSentAt(seq)
+                        + estimator.getRetransmissionTimeout(history.getTransmissions(seq)));
+            }
+        }
+
+        if (earliest == Long.MAX_VALUE)
+            return Long.MAX_VALUE;
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, earliest - clock.millis()));
+    }
+
+    void received(Object object, long now)
+    {
+        receivedAt = now;
+
+        if(object instanceof PacketBatch)
+        {
+            final PacketBatch batch = (PacketBatch) object;
+            for(int i = 0; i < batch.getSize(); i++)
+                received(batch.get(i), now);
+        }
+        else if(object instanceof Packet)
+        {
+            final Packet pckt = (Packet) object;
+            final int sequence = sequence(pckt.getSequenceNumber());
+            final long launchTime = launchTime(pckt.getLaunchTime());
+
+            if(reliable){
+
+                int count;
+                if(ordered) {
+                    // the echo stands for its own sequence and every one before it
+                    count = history.cutBelow(sequence + 1, delivered);
+                }
+                else {
+                    Packet acknowledged = history.take(sequence);
+                    if(acknowledged != null)
+                        fragmenter.resolved(acknowledged, true);
+                    count = acknowledged != null ? 1 : 0;
+                }
+
+                if(count == 0)
+                    return; // duplicate or stale
+
+                if(sequence - lastACK.get() > 0)
+                    lastACK.set(sequence);
+
+                stats.addConfirmed(count);
+                capture(EventCapture.Type.ACK, sequence, count, now);
+
+                acknowledged(count, sequence, launchTime, now);
+            }
+            else // NOT RELIABLE && NOT ORDERED
+            {
+                lastACK.set(sequence);
+
+                // duplicates and packets already given up on are not confirmed again
+                Packet acknowledged = history.take(sequence);
+                if(acknowledged != null) {
+                    fragmenter.resolved(acknowledged, true);
+                    stats.incrementConfirmed();
+                    capture(EventCapture.Type.ACK, sequence, 1, now);
+                    acknowledged(1, sequence, launchTime, now);
+                }
+
+                expireUnreliable(now);
+            }
+        }
+        else if(object instanceof AckPacket)
+        {
+            final AckPacket ack = (AckPacket) object;
+            final int latest = sequence(ack.getLatestSequence());
+
+            // one datagram clears the latest sequence and everything flagged before it
+            int count = history.acknowledge(latest, ack.getAckBits(), delivered);
+            stats.addConfirmed(count);
+            capture(EventCapture.Type.ACK, latest, count, now);
+
+            if(latest - lastACK.get() > 0)
+                lastACK.set(latest);
+
+            if(!reliable)
+                expireUnreliable(now);
+
+            acknowledged(count, latest, launchTime(ack.getLaunchTime()), now);
+        }
+    }
+
+    // a packet acknowledged for the first time, the ordered mode delivers it once the ones before it were
+    private void delivered(Packet packet){
+        fragmenter.resolved(packet, true);
+
+        if (reorder != null)
+            reorder.offer(packet.getSequenceNumber(), launchTime(packet.getFirstLaunchTime()), receivedAt);
+    }
+
+    // the sent sequence a received one stands for, compact packets only carry its low 16 bits
+    private int sequence(int received){
+        if (payloadId == 0)
+            return received;
+
+        // nothing newer than the last sent one can come back, so it lies in the 2^16 sequences up to it
+        int reference = _sequenceNumber - 1;
+        int sequence = reference + (short) (received - reference);
+        return sequence - reference > 0 ? sequence - (1 << 16) : sequence;
+    }
+
+    // launch times of compact packets count from the epoch
+    private long launchTime(long received){
+        return payloadId != 0 ? received + epoch : received;
+    }
+
+    private void stamp(Packet packet, long now){
+        packet.setLaunchTime(payloadId != 0 ? now - epoch : now);
+    }
+
+    private void acknowledged(int count, int sequence, long launchTime, long now){
+        long rtt = now - launchTime;
+
+        stats.recordRtt(rtt, now);
+        if (metrics != null)
+            metrics.publishRTT(sequence, rtt);
+        capture(EventCapture.Type.RTT, sequence, (int) rtt, now);
+
+        if (congestion != null)
+            congestion.onAck(count, rtt, now);
+    }
+
+    private void lost(long now){
+        if (congestion != null)
+            congestion.onLoss(1, now);
+    }
+
+    // launch times grow with the sequence, so expired packets are at the start of the window
+    private void expireUnreliable(long now){
+        for (int seq = history.first(); history.contains(seq); seq = history.next(seq))
+        {
+            Packet p = history.get(seq);
+            if (p == null)
+                continue;
+
+            if (launchTime(p.getLaunchTime()) >= now - DROP_RELIABLE_PCKT_TIME)
+                break;
+
+            Packet expired = history.take(seq);
+            if (expired != null) {
+                fragmenter.resolved(expired, false);
+                stats.incrementLost();
+                capture(EventCapture.Type.LOST, seq, 1, now);
+                lost(now);
+            }
+        }
+    }
+
+    // resends packets whose backed off RTO expired, gives up after MAX_TRANSMISSIONS
+    private void retransmitExpired(long now){
+        for (SendOrder queue = expired(now); queue != null; queue = expired(now))
+        {
+            int seq = queue.poll();
+            Packet p = history.get(seq);
+            if (p == null)
+                continue; // acknowledged meanwhile
+
+            // every expired timeout is a loss signal
+            lost(now);
+
+            if (history.getTransmissions(seq) >= MAX_TRANSMISSIONS) {
+                Packet given = history.take(seq);
+                if (given != null) {
+                    fragmenter.resolved(given, false);
+                    stats.incrementLost();
+                    capture(EventCapture.Type.LOST, seq, 1, now);
+                }
+                continue;
+            }
+
+            // the echoed launch time then measures the RTT of this transmission
+            stamp(p, now);
+
+            boolean passed = coalescer.send(p);
+
+            markSent(seq, now);
+            stats.incrementSent();
+            captureSent(EventCapture.Type.RETRANSMIT, seq, passed, now);
+        }
+    }
+
+    // packs new packets and the ones whose backed off RTO expired into MTU bounded containers
+    private void sendDue(long now){
+        int perDatagram = Math.max(1, (mtu - PacketRegistry.CONTAINER_OVERHEAD) / packetSize);
+
+        for (SendOrder queue = expired(now); queue != null; queue = expired(now))
+        {
+            int seq = queue.poll();
+            Packet p = history.get(seq);
+            if (p == null)
+                continue; // acknowledged meanwhile
+            lost(now);
+
+            // the echoed launch time then measures the RTT of this transmission
+            stamp(p, now);
+            send(seq, p, EventCapture.Type.RETRANSMIT, perDatagram, now);
+        }
+
+        for (; unsent - _sequenceNumber < 0; unsent++)
+        {
+            Packet p = history.get(unsent);
+            if (p != null)
+                send(unsent, p, EventCapture.Type.SEND, perDatagram, now);
+        }
+
+        if (!batch.isEmpty())
+            flushBatch(now);
+    }
+
+    private void send(int seq, Packet p, EventCapture.Type type, int perDatagram, long now){
+        markSent(seq, now);
+        batch.add(p);
+        capture(type, seq, 1, now);
+
+        if (batch.size() == perDatagram)
+            flushBatch(now);
+    }
+
+    private void markSent(int seq, long now){
+        history.markSent(seq, now);
+        sendOrder[Math.min(history.getTransmissions(seq), sendOrder.length) - 1].add(seq);
+    }
+
+    // the queue whose first packet is outstanding and its timeout expired, null if there is none
+    private SendOrder expired(long now){
+        RttEstimator estimator = stats.getRtt().getEstimator();
+
+        for (SendOrder queue : sendOrder)
+        {
+            while (!queue.isEmpty())
+            {
+                int seq = queue.peek();
+                if (history.get(seq) == null) {
+                    queue.poll(); // acknowledged
+                    continue;
+                }
+
+                long timeout = estimator.getRetransmissionTimeout(history.getTransmissions(seq));
+                if (now - history.getSentAt(seq) < timeout)
+                    break;
+                return queue;
+            }
+        }
+        return null;
+    }
+
+    private void flushBatch(long now){
+        container.setElements(batch);
+        if (!coalescer.send(container))
+            capture(EventCapture.Type.DROP, batch.get(0).getSequenceNumber(), batch.size(), now);
+
+        stats.addSent(batch.size());
+        batch.clear();
+    }
+
+    // a packet whose batch was lost after its send returned, the reliable modes resend it on its timeout
+    private void batchDropped(Packet packet){
+        long now = clock.millis();
+        int seq = packet.getSequenceNumber();
+        capture(EventCapture.Type.DROP, seq, 1, now);
+
+        if (reliable)
+            return;
+
+        Packet lost = history.take(seq);
+        if (lost != null) {
+            stats.incrementLost();
+            fragmenter.resolved(lost, false);
+            capture(EventCapture.Type.LOST, seq, 1, now);
+        }
+    }
+
+    private void captureSent(EventCapture.Type type, int sequence, boolean passed, long now){
+        capture(type, sequence, 1, now);
+        if (!passed)
+            capture(EventCapture.Type.DROP, sequence, 1, now);
+    }
+
+    private void capture(EventCapture.Type type, int sequence, int value, long now){
+        EventCapture capture = this.capture;
+        if (capture != null)
+            capture.record(type, now, sequence, value, getWindowSize());
+    }
+
+    boolean isReliable(){
+        return reliable;
+    }
+
+    CongestionController getCongestion(){
+        return congestion;
+    }
+
+    // window gauge as the UI has always shown it, nothing for the unreliable mode
+    int getWindowSize(){
+        return reliable ? history.getSize() : 0;
+    }
+
+    int getReorderOccupancy(){
+        return reorder != null ? reorder.getOccupancy() : 0;
+    }
+
+    int getMaxReorderOccupancy(){
+        return reorder != null ? reorder.getMaxOccupancy() : 0;
+    }
+
+    int getSequenceNumber(){
+        return _sequenceNumber;
+    }
+
+    int getLastAck(){
+        return lastACK.get();
+    }
+
+    /**
+     * Switches to compact packets with the dictionary the server answered the handshake with, before the
+     * first packet is sent. Their 16 bit sequences stay unambiguous with less than 2^15 in flight, so the
+     * window is capped to that while they are sent. Fragments always carry their slice. Without the answer,
+     * as with inline payloads, packets keep the full header.
+     */
+    void setPayloadDictionary(PacketRegistry.PayloadDictionary dictionary, long now){
+        if (history.getCapacity() > 1 << 16 || fragmenter.fragmenting(mtu))
+            return;
+
+        epoch = now;
+        payloadId = dictionary.idOf(msg);
+        packetSize = payloadId != 0 ? PacketRegistry.PAYLOAD_PACKET_SIZE : PacketRegistry.maxPacketSize(msg);
+    }
+
+    // null stops capturing, the caller closes the capture
+    void setCapture(EventCapture capture){
+        this.capture = capture;
+    }
+
+    // the channels of one connection share the bandwidth cap of their impairment
+    void setBandwidth(Bandwidth bandwidth){
+        link.setBandwidth(bandwidth);
+    }
+
+    // packets of the unordered modes wait up to this long to share a datagram, 0 sends each alone
+    void setAggregation(long micros){
+        coalescer.setDeadline(micros);
+    }
+
+    // a message split into fragments keeps its slices, the next one is cut for the new MTU
+    void setMtu(int mtu){
+        this.mtu = mtu;
+        coalescer.setMtu(mtu);
+    }
+
+    void setLoseChance(float chance){
+        if(chance < 0)
+            this.loseChance = 0;
+        else if(chance >= 1)
+            this.loseChance = 0.7f;
+        else this.loseChance = chance;
+
+        link.setLoss(loseChance);
+    }
+}
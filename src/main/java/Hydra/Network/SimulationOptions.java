@@ -0,0 +1,181 @@
+package Hydra.Network;
+
+/**
+ * Command line options Headless and Swarm share: the server, what is sent and how, how long and the
+ * network impairment. Each tool parses its own options first and hands the rest to {@link #parseOption}.
+ */
+class SimulationOptions {
+
+    interface Parser {
+        // applies an option of the tool, false if it is not one
+        boolean parseOption(String option, String value);
+    }
+
+    // command line options understood by parseOption
+    static final String USAGE = " [--server host] [--mode unreliable|reliable|ordered] [--pps n] [--loss 0-0.7]" +
+            " [--message text] [--duration seconds] [--interval seconds] [--cc none|aimd|delay]" +
+            " [--ack echo|selective] [--payload inline|dictionary] [--aggregate us] [--mtu bytes]" +
+            " [--burst packets]" + ImpairmentConfig.USAGE;
+
+    private String server = "localhost";
+    private boolean reliable = false;
+    private boolean ordered = false;
+    private int pps;
+    private float loss = 0f;
+    private String message = "Packet Message";
+    private long duration = 10;
+    private long interval = 1;
+    private CongestionControl congestionControl = CongestionControl.NONE;
+    private boolean selectiveAck = false;
+    private boolean payloadDictionary = false;
+    private long aggregation = 0;
+    private int mtu = UDPClient.DEFAULT_MTU;
+
+    // packets the pacer may send back to back after a stall, 0 sizes it to 10 ms worth
+    private int burst = 0;
+    private final ImpairmentConfig impairment = new ImpairmentConfig();
+
+    SimulationOptions(int pps){
+        this.pps = pps;
+    }
+
+    /**
+     * Parses option and value pairs, the tool's own options first.
+     */
+    void parse(String[] args, Parser tool){
+        for (int i = 0; i < args.length; i++)
+        {
+            String option = args[i];
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for " + option);
+
+            String value = args[++i];
+
+            try {
+                if (!tool.parseOption(option, value) && !parseOption(option, value))
+                    throw new IllegalArgumentException("Unknown option " + option);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+            }
+        }
+    }
+
+    /**
+     * Applies a command line option, returns false if it is not a shared option.
+     */
+    boolean parseOption(String option, String value){
+        switch (option){
+            case "--server": server = value; break;
+            case "--mode": setMode(value); break;
+            case "--pps": pps = Math.max(1, Integer.parseInt(value)); break;
+            case "--loss": loss = Float.parseFloat(value); break;
+            case "--message": message = value; break;
+            case "--duration": duration = Long.parseLong(value); break;
+            case "--interval": interval = Math.max(1, Long.parseLong(value)); break;
+            case "--cc": setCongestionControl(value); break;
+            case "--ack": setAck(value); break;
+            case "--payload": setPayload(value); break;
+            case "--aggregate": aggregation = Math.max(0, Long.parseLong(value)); break;
+            case "--mtu": mtu = UDPClient.validMtu(Integer.parseInt(value)); break;
+            case "--burst": burst = Math.max(0, Integer.parseInt(value)); break;
+            default: return impairment.parseOption(option, value);
+        }
+        return true;
+    }
+
+    private void setMode(String mode){
+        switch (mode){
+            case "unreliable": reliable = false; ordered = false; break;
+            case "reliable": reliable = true; ordered = false; break;
+            case "ordered": reliable = true; ordered = true; break;
+            default: throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+
+    private void setCongestionControl(String name){
+        switch (name){
+            case "none": congestionControl = CongestionControl.NONE; break;
+            case "aimd": congestionControl = CongestionControl.AIMD; break;
+            case "delay": congestionControl = CongestionControl.DELAY_BASED; break;
+            default: throw new IllegalArgumentException("Unknown congestion control " + name);
+        }
+    }
+
+    // only used by the embedded server of --server loopback
+    private void setAck(String ack){
+        switch (ack){
+            case "echo": selectiveAck = false; break;
+            case "selective": selectiveAck = true; break;
+            default: throw new IllegalArgumentException("Unknown ACK style " + ack);
+        }
+    }
+
+    // the dictionary needs a server which knows it, like the embedded one
+    private void setPayload(String payload){
+        switch (payload){
+            case "inline": payloadDictionary = false; break;
+            case "dictionary": payloadDictionary = true; break;
+            default: throw new IllegalArgumentException("Unknown payload style " + payload);
+        }
+    }
+
+    String getServer(){
+        return server;
+    }
+
+    boolean isReliable(){
+        return reliable;
+    }
+
+    boolean isOrdered(){
+        return ordered;
+    }
+
+    int getPps(){
+        return pps;
+    }
+
+    float getLoss(){
+        return loss;
+    }
+
+    String getMessage(){
+        return message;
+    }
+
+    long getDuration(){
+        return duration;
+    }
+
+    long getInterval(){
+        return interval;
+    }
+
+    CongestionControl getCongestionControl(){
+        return congestionControl;
+    }
+
+    boolean isSelectiveAck(){
+        return selectiveAck;
+    }
+
+    boolean isPayloadDictionary(){
+        return payloadDictionary;
+    }
+
+    long getAggregation(){
+        return aggregation;
+    }
+
+    int getMtu(){
+        return mtu;
+    }
+
+    int getBurst(){
+        return burst;
+    }
+
+    ImpairmentConfig getImpairment(){
+        return impairment;
+    }
+}
@@ -0,0 +1,279 @@
+package Hydra.Network;
+
+import Hydra.Logging.Logger;
+import Hydra.Statistics.RttHistogram;
+import Hydra.Statistics.StatsSnapshot;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line load generator simulating many R-UDP clients at once. The sessions are spread over a few
+ * selector threads instead of running one Kryonet client with its own threads each.
+ * Prints aggregate stats per interval and a summary with the spread between sessions at the end.
+ */
+public class Swarm {
+
+    private static final String USAGE = "usage: Swarm" + SimulationOptions.USAGE +
+            " [--sessions n] [--threads n] [--per-session true|false], --pps is per session";
+
+    private static final int MIN_WINDOW_CAPACITY = 1 << 10;
+    private static final int MAX_WINDOW_CAPACITY = 1 << 16;
+
+    private final SimulationOptions options = new SimulationOptions(10);
+    private int sessionCount = 100;
+    private int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private boolean perSession = false;
+
+    private SwarmSession[] sessions;
+    private SwarmWorker[] workers;
+
+    public static void main(String[] args) throws InterruptedException {
+        Swarm swarm = new Swarm();
+
+        try {
+            swarm.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        Logger.initialize();
+        System.exit(swarm.run());
+    }
+
+    private void parse(String[] args){
+        options.parse(args, this::parseOption);
+    }
+
+    private boolean parseOption(String option, String value){
+        switch (option){
+            case "--sessions": sessionCount = Math.max(1, Integer.parseInt(value)); break;
+            case "--threads": threads = Math.max(1, Integer.parseInt(value)); break;
+            case "--per-session": perSession = Boolean.parseBoolean(value); break;
+            default: return false;
+        }
+        return true;
+    }
+
+    private int run() throws InterruptedException {
+        LoopbackServer loopback = null;
+        InetSocketAddress tcpAddress, udpAddress;
+        String server = options.getServer();
+        int pps = options.getPps();
+        String message = options.getMessage();
+        int mtu = options.getMtu();
+
+        if (LoopbackServer.HOST.equalsIgnoreCase(server)) {
+            loopback = new LoopbackServer(options.isSelectiveAck());
+            try {
+                loopback.open();
+            } catch (IOException ex) {
+                System.err.println("Could not start the loopback server: " + ex.getMessage());
+                loopback.close();
+                return 1;
+            }
+
+            tcpAddress = new InetSocketAddress(LoopbackServer.address(), UDPClient.TCP_PORT);
+            udpAddress = new InetSocketAddress(LoopbackServer.address(), UDPClient.UDP_PORT);
+        }
+        else {
+            tcpAddress = new InetSocketAddress(server, UDPClient.TCP_PORT);
+            udpAddress = new InetSocketAddress(server, UDPClient.UDP_PORT);
+            if (tcpAddress.isUnresolved()) {
+                System.err.println("Unknown server " + server);
+                return 1;
+            }
+        }
+
+        threads = Math.min(threads, sessionCount);
+        workers = new SwarmWorker[threads];
+        for (int i = 0; i < threads; i++)
+            workers[i] = new SwarmWorker(tcpAddress, udpAddress, pps, options.getBurst());
+
+        // a few seconds of packets in flight, the same bound the single client uses at most
+        int windowCapacity = Math.min(MAX_WINDOW_CAPACITY,
+                Integer.highestOneBit(Math.max(MIN_WINDOW_CAPACITY, pps * 8) - 1) << 1);
+
+        sessions = new SwarmSession[sessionCount];
+        for (int i = 0; i < sessionCount; i++)
+        {
+            SwarmSession session = new SwarmSession(i);
+            SimulationEngine engine = new SimulationEngine(options.isReliable(), options.isOrdered(), options.getLoss(),
+                    message, windowCapacity, mtu, session, sessionImpairment(i), session.stats,
+                    options.getCongestionControl().create(pps), null);
+            engine.setAggregation(options.getAggregation());
+            session.engine = engine;
+            if (options.isPayloadDictionary() && Fragmenter.fits(message, mtu))
+                session.dictionary = new PacketRegistry.PayloadDictionary(message);
+            session.stats.setGauges(engine::getWindowSize, engine::getSequenceNumber, engine::getLastAck,
+                    () -> (int) session.getRate(pps));
+            session.stats.setReorderGauges(engine::getReorderOccupancy, engine::getMaxReorderOccupancy);
+
+            sessions[i] = session;
+            workers[i % threads].add(session);
+        }
+
+        Thread[] workerThreads = new Thread[threads];
+        for (int i = 0; i < threads; i++)
+        {
+            workerThreads[i] = new Thread(workers[i], "Swarm worker " + i);
+            workerThreads[i].start();
+        }
+
+        StatsSnapshot snapshot = new StatsSnapshot();
+        RttHistogram window = new RttHistogram();
+        RttHistogram recent = new RttHistogram();
+
+        long start = System.currentTimeMillis();
+        long end = start + TimeUnit.SECONDS.toMillis(options.getDuration());
+        long previousConfirmed = 0;
+
+        while (System.currentTimeMillis() < end && countOpen() > 0)
+        {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(options.getInterval()));
+
+            long sent = 0, confirmed = 0, lost = 0, windowSize = 0, rate = 0;
+            recent.reset();
+
+            for (SwarmSession session : sessions)
+            {
+                session.stats.snapshot(snapshot);
+                sent += snapshot.getSent();
+                confirmed += snapshot.getConfirmed();
+                lost += snapshot.getLost();
+                windowSize += snapshot.getWindowSize();
+                if (session.isRunning())
+                    rate += snapshot.getPacingRate();
+
+                session.stats.getRtt().window(window);
+                recent.add(window);
+            }
+
+            System.out.println(String.format(Locale.ROOT,
+                    "[%5d s] running %d/%d sent %d confirmed %d lost %d window %d rate %d pps goodput %d pps" +
+                            " p50 %d p99 %d max %d ms",
+                    (System.currentTimeMillis() - start) / 1000, countRunning(), sessionCount,
+                    sent, confirmed, lost, windowSize, rate,
+                    (confirmed - previousConfirmed) / options.getInterval(),
+                    recent.getValueAtPercentile(50), recent.getValueAtPercentile(99), recent.getMax()));
+
+            previousConfirmed = confirmed;
+        }
+
+        for (SwarmWorker worker : workers)
+            worker.stop();
+        for (Thread thread : workerThreads)
+            thread.join();
+
+        if (loopback != null)
+            loopback.stop();
+
+        printSummary(snapshot, (System.currentTimeMillis() - start) / 1000d);
+
+        return countFailed() == sessionCount ? 1 : 0;
+    }
+
+    private void printSummary(StatsSnapshot snapshot, double seconds){
+        long sent = 0, confirmed = 0, lost = 0;
+        long messagesSent = 0, messagesDelivered = 0, messagesLost = 0;
+        long delivered = 0;
+        int maxReorderOccupancy = 0;
+        RttHistogram total = new RttHistogram();
+        RttHistogram headOfLine = new RttHistogram();
+        RttHistogram deliveryDelay = new RttHistogram();
+        double[] goodput = new double[sessionCount];
+
+        for (int i = 0; i < sessionCount; i++)
+        {
+            SwarmSession session = sessions[i];
+            session.stats.snapshot(snapshot);
+            sent += snapshot.getSent();
+            confirmed += snapshot.getConfirmed();
+            lost += snapshot.getLost();
+            messagesSent += snapshot.getMessagesSent();
+            messagesDelivered += snapshot.getMessagesDelivered();
+            messagesLost += snapshot.getMessagesLost();
+            delivered += snapshot.getDelivered();
+            maxReorderOccupancy = Math.max(maxReorderOccupancy, snapshot.getMaxReorderOccupancy());
+            headOfLine.add(session.stats.getHeadOfLine());
+            deliveryDelay.add(session.stats.getDeliveryDelay());
+            total.add(session.stats.getRtt().getTotal());
+            goodput[i] = seconds > 0 ? snapshot.getConfirmed() / seconds : 0;
+
+            if (perSession)
+                System.out.println(String.format(Locale.ROOT,
+                        "session %d: sent %d, confirmed %d (%.1f pps), lost %d, srtt %d ms%s",
+                        session.id, snapshot.getSent(), snapshot.getConfirmed(), goodput[i], snapshot.getLost(),
+                        session.stats.getRtt().getEstimator().getSmoothedRtt(),
+                        session.failure != null ? ", " + session.failure : ""));
+        }
+
+        Arrays.sort(goodput);
+
+        System.out.println(String.format(Locale.ROOT,
+                "summary: %.1f s, %d sessions on %d threads, %d failed%n" +
+                        "sent %d, confirmed %d (%.1f pps), lost %d%n" +
+                        "goodput per session: min %.1f, p50 %.1f, max %.1f pps%n" +
+                        "rtt: p50 %d, p90 %d, p99 %d, max %d ms over %d samples",
+                seconds, sessionCount, threads, countFailed(),
+                sent, confirmed, seconds > 0 ? confirmed / seconds : 0, lost,
+                goodput[0], goodput[sessionCount / 2], goodput[sessionCount - 1],
+                total.getValueAtPercentile(50), total.getValueAtPercentile(90),
+                total.getValueAtPercentile(99), total.getMax(), total.getCount()));
+
+        if (delivered > 0)
+            System.out.println(String.format(Locale.ROOT,
+                    "in order: delivered %d, head-of-line delay p50 %d, p99 %d, max %d ms," +
+                            " since first send p50 %d, p99 %d, max %d ms, reorder buffer up to %d packets per session",
+                    delivered, headOfLine.getValueAtPercentile(50), headOfLine.getValueAtPercentile(99),
+                    headOfLine.getMax(), deliveryDelay.getValueAtPercentile(50),
+                    deliveryDelay.getValueAtPercentile(99), deliveryDelay.getMax(), maxReorderOccupancy));
+
+        if (messagesSent > 0)
+            System.out.println(String.format(Locale.ROOT,
+                    "messages: sent %d, delivered %d, lost %d, the counts above are fragments",
+                    messagesSent, messagesDelivered, messagesLost));
+
+        for (SwarmSession session : sessions)
+            if (session.failure != null && !perSession) {
+                System.err.println("first failure, session " + session.id + ": " + session.failure);
+                break;
+            }
+    }
+
+    // sessions get their own seeds derived from the given one, so their losses are not in lockstep
+    private ImpairmentConfig sessionImpairment(int session){
+        ImpairmentConfig impairment = options.getImpairment();
+        if (impairment.getSeed() == 0)
+            return impairment;
+
+        ImpairmentConfig config = impairment.copy();
+        config.setSeed(impairment.getSeed() * 31 + session + 1);
+        return config;
+    }
+
+    private int countRunning(){
+        int count = 0;
+        for (SwarmSession session : sessions)
+            if (session.isRunning())
+                count++;
+        return count;
+    }
+
+    private int countOpen(){
+        return sessionCount - countFailed();
+    }
+
+    private int countFailed(){
+        int count = 0;
+        for (SwarmSession session : sessions)
+            if (session.failure != null)
+                count++;
+        return count;
+    }
+}
@@ -0,0 +1,67 @@
+package Hydra.Network;
+
+import Hydra.Statistics.SimulationStats;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * One logical R-UDP connection of a swarm. It speaks the Kryonet client protocol on its own TCP and UDP
+ * channels, but has no thread of its own: its SwarmWorker drives it from a selector loop.
+ */
+class SwarmSession implements SimulationEngine.Output {
+
+    enum State {
+        CONNECTING,
+        REGISTERING,
+        HANDSHAKE,
+        RUNNING,
+        CLOSED
+    }
+
+    private static final int TCP_BUFFER_SIZE = 8_192;
+
+    final int id;
+    final SimulationStats stats = new SimulationStats();
+
+    SimulationEngine engine;
+    SwarmWorker worker;
+
+    SocketChannel tcp;
+    DatagramChannel udp;
+    final ByteBuffer tcpRead = ByteBuffer.allocate(TCP_BUFFER_SIZE);
+    final ByteBuffer tcpWrite = ByteBuffer.allocate(TCP_BUFFER_SIZE);
+
+    volatile State state = State.CONNECTING;
+    volatile String failure;
+
+    int connectionId;
+    long connectStarted;
+    long nextRegisterAttempt;
+    long lastTcpWrite;
+
+    // sent in the handshake, null to send the message in every packet
+    PacketRegistry.PayloadDictionary dictionary;
+
+    // share of the worker's pacing tokens not sent yet
+    double credit;
+
+    SwarmSession(int id){
+        this.id = id;
+    }
+
+    @Override
+    public void sendUDP(Object object){
+        worker.sendUDP(this, object);
+    }
+
+    double getRate(double packetsPerSec){
+        CongestionController congestion = engine.getCongestion();
+        return congestion != null ? congestion.getRate() : packetsPerSec;
+    }
+
+    boolean isRunning(){
+        return state == State.RUNNING;
+    }
+}
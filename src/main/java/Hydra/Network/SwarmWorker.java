@@ -0,0 +1,348 @@
+package Hydra.Network;
+
+import Hydra.Logging.Logger;
+import com.esotericsoftware.kryonet.FrameworkMessage;
+import com.esotericsoftware.kryonet.KryoSerialization;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Selector thread driving a share of the swarm sessions: Kryonet handshakes, keep alives, receiving, and the
+ * packets of all its sessions from one shared token bucket, split by each session's own rate.
+ */
+class SwarmWorker implements Runnable {
+
+    private static final long CONNECT_TIMEOUT = 10_000;
+    private static final long REGISTER_INTERVAL = 500;
+    private static final long KEEP_ALIVE_INTERVAL = 8_000;
+
+    private final ArrayList<SwarmSession> sessions = new ArrayList<>();
+    private final InetSocketAddress tcpAddress, udpAddress;
+    private final double packetsPerSec;
+
+    // Kryo is not thread safe, every worker has its own
+    private final KryoSerialization serialization = new KryoSerialization();
+    private final ByteBuffer udpWrite = ByteBuffer.allocateDirect(UDPClient.OBJECT_BUFFER_SIZE);
+    private final ByteBuffer udpRead = ByteBuffer.allocateDirect(UDPClient.OBJECT_BUFFER_SIZE);
+
+    private final Pacer pacer;
+    private Selector selector;
+    private volatile boolean running = true;
+
+    // time until the earliest datagram an impairment held back is due
+    private long nextDelayed = Long.MAX_VALUE;
+
+    // burst is the one of the shared token bucket, 0 for automatic
+    SwarmWorker(InetSocketAddress tcpAddress, InetSocketAddress udpAddress, double packetsPerSec, int burst){
+        this.tcpAddress = tcpAddress;
+        this.udpAddress = udpAddress;
+        this.packetsPerSec = packetsPerSec;
+        this.pacer = new Pacer(packetsPerSec, burst);
+
+        PacketRegistry.register(serialization.getKryo());
+    }
+
+    // before the worker is started only
+    void add(SwarmSession session){
+        session.worker = this;
+        sessions.add(session);
+    }
+
+    void stop(){
+        running = false;
+        if (selector != null)
+            selector.wakeup();
+    }
+
+    @Override
+    public void run(){
+        try {
+            selector = Selector.open();
+        } catch (IOException ex) {
+            Logger.error("Swarm selector", ex);
+            for (SwarmSession session : sessions)
+                fail(session, "Selector error");
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (SwarmSession session : sessions)
+            open(session, now);
+
+        pacer.reset();
+
+        while (running)
+        {
+            try {
+                // rounded up, a wait below 1 ms must not turn into a spin on selectNow
+                long wait = Math.min(pacer.nanosUntilNext(), nextDelayed);
+                if (wait > 0)
+                    selector.select(wait / 1_000_000 + (wait % 1_000_000 != 0 ? 1 : 0));
+                else
+                    selector.selectNow();
+            } catch (IOException ex) {
+                Logger.error("Swarm select", ex);
+                break;
+            }
+
+            now = System.currentTimeMillis();
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext())
+            {
+                SelectionKey key = keys.next();
+                keys.remove();
+                handle(key, now);
+            }
+
+            pace(now);
+
+            nextDelayed = Long.MAX_VALUE;
+            for (SwarmSession session : sessions)
+            {
+                maintain(session, now);
+                if (session.isRunning())
+                    nextDelayed = Math.min(nextDelayed, session.engine.nanosUntilNext());
+            }
+        }
+
+        for (SwarmSession session : sessions)
+            close(session, null);
+
+        try { selector.close(); }
+        catch (IOException ex) {
+            Logger.error("Swarm selector close", ex);
+        }
+    }
+
+    private void open(SwarmSession session, long now){
+        session.connectStarted = now;
+
+        try {
+            session.tcp = SocketChannel.open();
+            session.tcp.configureBlocking(false);
+            session.tcp.socket().setTcpNoDelay(true);
+            session.tcp.connect(tcpAddress);
+            session.tcp.register(selector, SelectionKey.OP_CONNECT, session);
+
+            session.udp = DatagramChannel.open();
+            session.udp.configureBlocking(false);
+            session.udp.connect(udpAddress);
+            session.udp.register(selector, SelectionKey.OP_READ, session);
+        } catch (IOException ex) {
+            fail(session, "Connection error: " + ex.getMessage());
+        }
+    }
+
+    private void handle(SelectionKey key, long now){
+        SwarmSession session = (SwarmSession) key.attachment();
+        if (!key.isValid() || session.state == SwarmSession.State.CLOSED)
+            return;
+
+        try {
+            if (key.isConnectable()) {
+                session.tcp.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+
+            if (key.isWritable())
+                flushTCP(session);
+
+            if (key.isReadable()) {
+                if (key.channel() == session.udp)
+                    readUDP(session, now);
+                else
+                    readTCP(session, now);
+            }
+        } catch (IOException ex) {
+            fail(session, "Connection lost: " + ex.getMessage());
+        }
+    }
+
+    private void readUDP(SwarmSession session, long now) throws IOException {
+        while (true)
+        {
+            udpRead.clear();
+            if (session.udp.read(udpRead) <= 0)
+                return;
+
+            udpRead.flip();
+            received(session, serialization.read(null, udpRead), now);
+        }
+    }
+
+    private void readTCP(SwarmSession session, long now) throws IOException {
+        ByteBuffer buffer = session.tcpRead;
+
+        if (session.tcp.read(buffer) < 0)
+            throw new IOException("closed by server");
+
+        buffer.flip();
+
+        Object object;
+        while ((object = TcpFraming.read(serialization, buffer)) != null)
+            received(session, object, now);
+
+        buffer.compact();
+    }
+
+    private void received(SwarmSession session, Object object, long now) throws IOException {
+        if (object instanceof FrameworkMessage.RegisterTCP) {
+            session.connectionId = ((FrameworkMessage.RegisterTCP) object).connectionID;
+            session.state = SwarmSession.State.REGISTERING;
+            session.nextRegisterAttempt = now;
+        }
+        else if (object instanceof FrameworkMessage.RegisterUDP) {
+            session.state = SwarmSession.State.HANDSHAKE;
+            if (session.dictionary != null)
+                sendTCP(session, session.dictionary, now);
+            sendTCP(session, new PacketRegistry.InitialPacket(), now);
+        }
+        else if (object instanceof PacketRegistry.PayloadDictionary) {
+            session.engine.setPayloadDictionary((PacketRegistry.PayloadDictionary) object, now);
+        }
+        else if (object instanceof PacketRegistry.InitialPacket) {
+            session.state = SwarmSession.State.RUNNING;
+        }
+        else if (object instanceof FrameworkMessage.Ping) {
+            FrameworkMessage.Ping ping = (FrameworkMessage.Ping) object;
+            if (!ping.isReply) {
+                ping.isReply = true;
+                sendTCP(session, ping, now);
+            }
+        }
+        else if (!(object instanceof FrameworkMessage) && session.isRunning()) {
+            session.engine.received(object, now);
+        }
+    }
+
+    // hands the pacing tokens out in proportion to each running session's rate
+    private void pace(long now){
+        double total = 0;
+        for (SwarmSession session : sessions)
+            if (session.isRunning())
+                total += session.getRate(packetsPerSec);
+
+        if (total <= 0)
+            return;
+
+        pacer.setRate(total);
+        int tokens = pacer.poll();
+        if (tokens == 0)
+            return;
+
+        for (SwarmSession session : sessions)
+        {
+            if (!session.isRunning())
+                continue;
+
+            session.credit += tokens * session.getRate(packetsPerSec) / total;
+
+            int due = (int) session.credit;
+            session.credit -= due;
+            session.engine.sendNew(due, now);
+        }
+    }
+
+    private void maintain(SwarmSession session, long now){
+        try {
+            switch (session.state){
+                case CONNECTING:
+                case REGISTERING:
+                case HANDSHAKE:
+                    if (now - session.connectStarted > CONNECT_TIMEOUT) {
+                        fail(session, "Connection timed out in " + session.state);
+                        return;
+                    }
+
+                    // UDP is unreliable, so the registration is repeated until the server confirms it over TCP
+                    if (session.state == SwarmSession.State.REGISTERING && now >= session.nextRegisterAttempt) {
+                        FrameworkMessage.RegisterUDP register = new FrameworkMessage.RegisterUDP();
+                        register.connectionID = session.connectionId;
+                        sendUDP(session, register);
+                        session.nextRegisterAttempt = now + REGISTER_INTERVAL;
+                    }
+                    break;
+
+                case RUNNING:
+                    session.engine.resend(now);
+                    break;
+
+                default:
+                    return;
+            }
+
+            // the server drops connections sending over TCP before their UDP registration
+            boolean registered = session.state == SwarmSession.State.HANDSHAKE || session.isRunning();
+            if (registered && now - session.lastTcpWrite > KEEP_ALIVE_INTERVAL)
+                sendTCP(session, FrameworkMessage.keepAlive, now);
+        } catch (IOException ex) {
+            fail(session, "Connection lost: " + ex.getMessage());
+        }
+    }
+
+    void sendUDP(SwarmSession session, Object object){
+        udpWrite.clear();
+        serialization.write(null, udpWrite, object);
+        udpWrite.flip();
+
+        try {
+            // a full socket buffer drops the datagram, as the network would
+            session.udp.write(udpWrite);
+        } catch (IOException ex) {
+            // ICMP port unreachable and the like only cost this datagram
+        }
+    }
+
+    private void sendTCP(SwarmSession session, Object object, long now) throws IOException {
+        TcpFraming.write(serialization, session.tcpWrite, object);
+
+        session.lastTcpWrite = now;
+        flushTCP(session);
+    }
+
+    private void flushTCP(SwarmSession session) throws IOException {
+        ByteBuffer buffer = session.tcpWrite;
+
+        buffer.flip();
+        session.tcp.write(buffer);
+        buffer.compact();
+
+        SelectionKey key = session.tcp.keyFor(selector);
+        if (key != null && key.isValid())
+            key.interestOps(buffer.position() > 0
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                    : SelectionKey.OP_READ);
+    }
+
+    private void fail(SwarmSession session, String reason){
+        close(session, reason);
+    }
+
+    private void close(SwarmSession session, String reason){
+        if (session.state == SwarmSession.State.CLOSED)
+            return;
+
+        if (reason != null)
+            session.failure = reason;
+        session.state = SwarmSession.State.CLOSED;
+
+        try {
+            if (session.tcp != null)
+                session.tcp.close();
+            if (session.udp != null)
+                session.udp.close();
+        } catch (IOException ex) {
+            Logger.error("Swarm session close", ex);
+        }
+    }
+}
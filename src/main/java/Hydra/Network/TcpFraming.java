@@ -0,0 +1,44 @@
+package Hydra.Network;
+
+import com.esotericsoftware.kryonet.KryoSerialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Kryonet's TCP frames, a 4 byte length followed by the object
+final class TcpFraming {
+
+    private TcpFraming(){}
+
+    // appends a frame to a buffer in write mode
+    static void write(KryoSerialization serialization, ByteBuffer buffer, Object object){
+        int start = buffer.position();
+
+        buffer.position(start + 4);
+        serialization.write(null, buffer, object);
+        buffer.putInt(start, buffer.position() - start - 4);
+    }
+
+    // reads the next frame of a buffer in read mode, null until it arrived completely
+    static Object read(KryoSerialization serialization, ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 4)
+            return null;
+
+        int length = buffer.getInt(buffer.position());
+        if (length < 0 || length > buffer.capacity() - 4)
+            throw new IOException("invalid frame length " + length);
+        if (buffer.remaining() < 4 + length)
+            return null;
+
+        int start = buffer.position() + 4;
+        int limit = buffer.limit();
+
+        buffer.position(start);
+        buffer.limit(start + length);
+        Object object = serialization.read(null, buffer);
+        buffer.limit(limit);
+        buffer.position(start + length);
+
+        return object;
+    }
+}
@@ -0,0 +1,32 @@
+package Hydra.Network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * The connection a UDPClient runs its simulation over: the Kryonet handshake, TCP for the control messages
+ * and UDP for the simulation's datagrams. {@link #run()} is the network thread, received objects are handed
+ * to the listener on it.
+ */
+interface Transport extends Runnable, SimulationEngine.Output {
+
+    interface Listener {
+        void received(Object object);
+        void disconnected();
+    }
+
+    void setListener(Listener listener);
+
+    // blocks until the server confirmed the UDP registration or the timeout in ms passed
+    void connect(int timeout, InetAddress host, int tcpPort, int udpPort) throws IOException;
+
+    boolean isConnected();
+
+    void sendTCP(Object object);
+
+    // closes the connection, the network thread keeps running for the next one
+    void close();
+
+    // ends the network thread
+    void stop();
+}
@@ -0,0 +1,22 @@
+package Hydra.Network;
+
+enum TransportType {
+    KRYONET,
+    NIO;
+
+    Transport create(){
+        switch (this){
+            case NIO:
+                return new NioTransport();
+            default:
+                return new KryonetTransport();
+        }
+    }
+
+    static TransportType parse(String name){
+        for (TransportType type : values())
+            if (type.name().equalsIgnoreCase(name))
+                return type;
+        throw new IllegalArgumentException("Unknown transport " + name);
+    }
+}
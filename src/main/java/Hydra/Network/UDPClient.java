@@ -2,68 +2,124 @@ package Hydra.Network;
 
 import Hydra.Generic.NetworkListener;
 import Hydra.Logging.Logger;
-import Hydra.Packets.Packet;
-import Hydra.Packets.PacketContainer;
-import com.esotericsoftware.kryonet.Client;
-import com.esotericsoftware.kryonet.Connection;
-import com.esotericsoftware.kryonet.Listener;
-import javafx.application.Platform;
+import Hydra.Statistics.SimulationStats;
 
 import java.io.IOException;
-import java.util.Random;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 import static Hydra.Logging.Logger.error;
 
-class UDPClient extends Client {
+class UDPClient implements Runnable {
 
-    private final int TCP_PORT = 5555;
-    private final int UDP_PORT = 5556;
+    static final int TCP_PORT = 5555;
+    static final int UDP_PORT = 5556;
     private final int TIMEOUT = 3000;
 
-    private final long DROP_RELIABLE_PCKT_TIME = 5_000;
+    static final int OBJECT_BUFFER_SIZE = 6_000;
 
-    private static final int WRITE_BUFFER_SIZE = 30_000;
-    private static final int OBJECT_BUFFER_SIZE = 6_000;
+    private static final int WINDOW_CAPACITY = 1 << 16;
+
+    static final int DEFAULT_MTU = 1_200;
+    private static final int MIN_MTU = 256;
 
     private NetworkListener conStateListener;
-    private Listener initialListener;
-    private PacketSender packetSender = null;
-    private Thread senderThread = null;
+    private final Executor callbacks;
+    private final Transport transport;
+    private volatile boolean awaitingInitial = false;
+    private final SimulationStats stats = new SimulationStats();
+    private final MetricsPublisher metrics;
+
+    // one per channel, the first one sends its datagrams as they are and drives the listener
+    private volatile PacketSender[] senders = null;
+    private volatile SimulationStats[] channelStats = { stats };
+    private volatile int mtu = DEFAULT_MTU;
+    private volatile int burstSize = 0;
+    private LoopbackServer loopback = null;
+    private volatile boolean selectiveLoopbackAck = false;
+    private volatile ImpairmentConfig impairment = null;
+    private volatile boolean payloadDictionary = false;
+    private volatile long aggregationMicros = 0;
+    private volatile Path capturePath = null;
+    private EventCapture capture = null;
+
+    // listener callbacks run on the given executor, Platform::runLater for the GUI
+    UDPClient(NetworkListener conStateListener, Executor callbacks)
+    {
+        this(conStateListener, callbacks, TransportType.KRYONET);
+    }
 
-    UDPClient(NetworkListener conStateListener)
+    UDPClient(NetworkListener conStateListener, Executor callbacks, TransportType transportType)
     {
-        super(WRITE_BUFFER_SIZE, OBJECT_BUFFER_SIZE);
         this.conStateListener = conStateListener;
+        this.callbacks = callbacks;
+        this.metrics = new MetricsPublisher(conStateListener, callbacks, stats);
+        this.transport = transportType.create();
 
-        PacketRegistry.register(this);
-
-        initialListener = new Listener(){
+        transport.setListener(new Transport.Listener() {
             @Override
-            public void received(Connection connection, Object object) {
-                super.received(connection, object);
-
-                if(object instanceof PacketRegistry.InitialPacket) {
-                    removeListener(this);
-                    if (senderThread != null) {
-                        senderThread.start();
+            public void received(Object object) {
+                PacketSender[] senders = UDPClient.this.senders;
+
+                if(object instanceof PacketRegistry.PayloadDictionary) {
+                    if (senders != null)
+                        for (PacketSender sender : senders)
+                            sender.engine.setPayloadDictionary((PacketRegistry.PayloadDictionary) object,
+                                    System.currentTimeMillis());
+                }
+                else if(object instanceof PacketRegistry.InitialPacket) {
+                    if (awaitingInitial) {
+                        awaitingInitial = false;
+                        if (senders != null) {
+                            metrics.start(senders[0].engine.isReliable());
+                            for (PacketSender sender : senders)
+                                sender.thread.start();
+                        }
                     }
                 }
+                else if(object instanceof PacketRegistry.ChannelDatagram) {
+                    PacketRegistry.ChannelDatagram datagram = (PacketRegistry.ChannelDatagram) object;
+                    if (senders != null && datagram.channel > 0 && datagram.channel < senders.length)
+                        senders[datagram.channel].engine.received(datagram.datagram, System.currentTimeMillis());
+                }
+                else if (senders != null)
+                    senders[0].engine.received(object, System.currentTimeMillis());
+            }
+
+            @Override
+            public void disconnected() {
+                if (senders != null)
+                    callbacks.execute(() -> conStateListener.onConnectionStateChanged(ConnectionState.DISCONNECTED));
             }
-        };
+        });
+    }
+
+    // the network thread of the transport
+    @Override
+    public void run()
+    {
+        transport.run();
     }
 
     void connect(String serverAddress)
     {
         new Thread(() -> {
 
-            try { connect(TIMEOUT,serverAddress,TCP_PORT, UDP_PORT); }
+            try {
+                if(LoopbackServer.HOST.equalsIgnoreCase(serverAddress.trim()))
+                    transport.connect(TIMEOUT, startLoopback(), TCP_PORT, UDP_PORT);
+                else {
+                    stopLoopback();
+                    transport.connect(TIMEOUT, InetAddress.getByName(serverAddress), TCP_PORT, UDP_PORT);
+                }
+            }
             catch (IOException ex) {
                 error("Connection error", ex);
             }
 
-            Platform.runLater(() -> {
-                if(isConnected())
+            callbacks.execute(() -> {
+                if(transport.isConnected())
                     conStateListener.onConnectionStateChanged(ConnectionState.CONNECTED);
                 else conStateListener.onConnectionStateChanged(ConnectionState.TIMED_OUT);
             });
@@ -71,224 +127,286 @@ class UDPClient extends Client {
         }).start();
     }
 
+    // the embedded server keeps running across reconnects and stops with the client
+    private synchronized InetAddress startLoopback() throws IOException
+    {
+        if(loopback == null) {
+            LoopbackServer server = new LoopbackServer(selectiveLoopbackAck);
+            try {
+                server.open();
+            } catch (IOException ex) {
+                server.close();
+                throw ex;
+            }
+            loopback = server;
+        }
+        return LoopbackServer.address();
+    }
+
+    private synchronized void stopLoopback()
+    {
+        if(loopback != null) {
+            loopback.stop();
+            loopback = null;
+        }
+    }
+
+    void stop()
+    {
+        transport.stop();
+        stopLoopback();
+    }
+
+    // ACK style of the embedded server, used when it is started next
+    void setSelectiveLoopbackAck(boolean selective)
+    {
+        this.selectiveLoopbackAck = selective;
+    }
+
+    // network impairment of the next simulation, null for the uniform loss only
+    void setImpairment(ImpairmentConfig impairment)
+    {
+        this.impairment = impairment;
+    }
+
+    // sends the message once in the handshake of the next simulation, the remote server does not support it
+    void setPayloadDictionary(boolean enabled)
+    {
+        this.payloadDictionary = enabled;
+    }
+
+    // records the first channel of the next simulations, null for none
+    void setCapture(Path path)
+    {
+        this.capturePath = path;
+    }
+
     void stopSimulation()
     {
-        if (packetSender != null) {
-            removeListener(packetSender);
-            packetSender.stop();
-            packetSender = null;
+        PacketSender[] senders = this.senders;
+        if (senders != null) {
+            for (PacketSender sender : senders)
+                sender.stop();
+            this.senders = null;
+            metrics.stop();
+        }
+
+        if (capture != null) {
+            capture.close();
+            capture = null;
         }
     }
 
     void disconnect()
     {
-        close();
-        if(packetSender != null)
-            removeListener(packetSender);
+        transport.close();
     }
 
-    void startSimulation(boolean reliable, boolean ordered, int packetsPerSec, float loseChance, String msg)
+    void startSimulation(boolean reliable, boolean ordered, int packetsPerSec, float loseChance, String msg,
+                         CongestionControl congestionControl)
     {
-        stopSimulation();
-        packetSender = new PacketSender(reliable,ordered,packetsPerSec, loseChance,msg);
-        addListener(packetSender);
-        senderThread = new Thread(packetSender);
-
-        addListener(initialListener);
-        sendTCP(new PacketRegistry.InitialPacket());
+        startSimulation(new DeliveryMode[] { DeliveryMode.of(reliable, ordered) }, new int[] { packetsPerSec },
+                loseChance, msg, congestionControl);
     }
 
-    private class PacketSender extends Listener implements Runnable
+    /**
+     * Runs one channel per mode over the connection, each with its own sequences, window, pacing and stats.
+     * Channels after the first and the sequenced mode need a server which knows them, like the embedded one.
+     */
+    void startSimulation(DeliveryMode[] modes, int[] packetsPerSec, float loseChance, String msg,
+                         CongestionControl congestionControl)
     {
-        private volatile boolean running = true;
+        stopSimulation();
+
+        // the channels share the connection's bandwidth
+        Bandwidth bandwidth = new Bandwidth(impairment != null ? impairment : new ImpairmentConfig(), Clock.SYSTEM);
 
-        private final boolean reliable, ordered;
-        private volatile int packetsPerSec;
-        private volatile float loseChance;
-        private final String msg;
-        private Random random;
+        PacketSender[] senders = new PacketSender[modes.length];
+        SimulationStats[] channelStats = new SimulationStats[modes.length];
+        for (int i = 0; i < modes.length; i++)
+        {
+            channelStats[i] = i == 0 ? stats : new SimulationStats();
+            senders[i] = new PacketSender(i, modes[i], packetsPerSec[i], loseChance, msg, congestionControl,
+                    channelStats[i]);
+            senders[i].engine.setBandwidth(bandwidth);
+        }
+        this.channelStats = channelStats;
+        this.senders = senders;
+
+        capture = EventCapture.open(capturePath, modes[0].reliable);
+        senders[0].engine.setCapture(capture);
+
+        awaitingInitial = true;
+        if (modes.length > 1 || modes[0] == DeliveryMode.SEQUENCED)
+            transport.sendTCP(new PacketRegistry.ChannelTable(modes));
+        // a message which has to be split is not sent in the handshake either
+        if (payloadDictionary && Fragmenter.fits(msg, mtu))
+            transport.sendTCP(new PacketRegistry.PayloadDictionary(msg));
+        transport.sendTCP(new PacketRegistry.InitialPacket());
+    }
 
-        private int sent, confirmed;
-        private int lost = 0;
+    // channels after the first wrap their datagrams with their number
+    private class ChannelOutput implements SimulationEngine.Output
+    {
+        private final PacketRegistry.ChannelDatagram datagram;
 
-        private int _sequenceNumber = 0;
-        private AtomicInteger lastACK = new AtomicInteger(0);
-        private PacketContainer history = new PacketContainer();
+        ChannelOutput(int channel){
+            this.datagram = new PacketRegistry.ChannelDatagram(channel);
+        }
 
-        private float randomValue;
-        private long currentTime;
+        // the sender thread of the channel, the transport serializes before it returns
+        @Override
+        public void sendUDP(Object object){
+            datagram.datagram = object;
+            transport.sendUDP(datagram);
+        }
+    }
 
-        PacketSender(boolean reliable, boolean ordered, int packetsPerSec, float loseChance, String msg){
-            this.reliable = reliable;
-            this.ordered = ordered;
+    private class PacketSender implements Runnable
+    {
+        private volatile boolean running = true;
 
+        private final int channel;
+        private final Pacer pacer;
+        private final SimulationEngine engine;
+        private final Thread thread;
+
+        PacketSender(int channel, DeliveryMode mode, int packetsPerSec, float loseChance, String msg,
+                     CongestionControl congestionControl, SimulationStats stats){
+            this.channel = channel;
+            this.pacer = new Pacer(packetsPerSec, burstSize);
+            this.engine = new SimulationEngine(mode.reliable, mode.ordered, loseChance, msg, WINDOW_CAPACITY,
+                    channelMtu(channel, mtu), channel == 0 ? transport : new ChannelOutput(channel),
+                    impairment(channel), stats, congestionControl.create(pacer.getRate()),
+                    channel == 0 ? metrics : null);
+            this.thread = new Thread(this, "Channel " + channel + " sender");
+            engine.setAggregation(aggregationMicros);
             setPacketsPerSec(packetsPerSec);
-            setLoseChance(loseChance);
 
-            this.msg = msg;
-            this.random = new Random();
-            this.sent = this.confirmed;
+            stats.reset();
+            stats.setGauges(engine::getWindowSize, engine::getSequenceNumber, engine::getLastAck,
+                    () -> (int) pacer.getRate());
+            stats.setReorderGauges(engine::getReorderOccupancy, engine::getMaxReorderOccupancy);
         }
 
         @Override
         public void run()
         {
+            pacer.reset();
+
             try {
                 while (running)
                 {
+                    int due = 0;
+
+                    // the slider only sets the ceiling once a controller drives the rate
+                    engine.pace(pacer);
+
                     try {
-                        Thread.sleep(1_000 / packetsPerSec);
+                        // wakes up early for held back datagrams, batches and retransmission timeouts
+                        due = pacer.acquire(engine.nanosUntilNext());
                     } catch (InterruptedException e) {
-                        Platform.runLater(() -> conStateListener.onCriticalError("CPU error. Please connect again"));
+                        callbacks.execute(() -> conStateListener.onCriticalError("CPU error. Please connect again"));
                         error("CPU Error", e);
                     }
 
-                    currentTime = System.currentTimeMillis();
-                    randomValue = random.nextFloat();
-
-                    final Packet pckt = new Packet(_sequenceNumber++, currentTime, msg, loseChance);
-
-                    if (reliable) {
-
-                        if (ordered) // complete implementation
-                        {
-                            history.add(pckt);
-
-                            if (randomValue > loseChance)
-                                sendUDP(history);
-
-                            ++sent;
-                            Platform.runLater(() -> conStateListener.update(sent, history.getSize(), confirmed, sent - confirmed));
-                        }
-                        else
-                        {
-                            history.add(pckt);
-
-                            if (randomValue > loseChance)
-                                sendUDP(pckt);
-
-                            ++sent;
-                            Platform.runLater(() -> conStateListener.update(sent, history.getSize(), confirmed, sent - confirmed));
-
-                            // send the entire unconfirmed history
-                            for (Packet p : history.getElements())
-                            {
-                                if (randomValue > loseChance) {
-                                    sendUDP(p);
-                                }
-
-                                sent++;
-                                Platform.runLater(() -> conStateListener.update(sent, history.getSize(), confirmed, sent - confirmed));
-                            }
-                        }
-                    }
-                    else // NOT RELIABLE && NOT ORDERED
-                    {
-                        if (randomValue > loseChance) {
-                            sendUDP(pckt);
-                            history.add(pckt);
-                        }else ++lost;
-
-                        ++sent;
-                        Platform.runLater(() -> conStateListener.update(sent, 0, confirmed, lost));
-                    }
-
-                    Platform.runLater(() -> {
-                        conStateListener.updateSequences(_sequenceNumber, lastACK.get());
-                        conStateListener.updateRTT();
-                    });
+                    engine.send(due, System.currentTimeMillis());
                 }
 
             }catch (Exception ex){
-                Platform.runLater(() -> conStateListener.onCriticalError("Buffer overflow. Please use lower Packet Loss"));
+                callbacks.execute(() -> conStateListener.onCriticalError("Buffer overflow. Please use lower Packet Loss"));
                 Logger.error("Buffer overflow", ex);
             }
         }
 
-        @Override
-        public void received(Connection connection, Object object)
-        {
-            super.received(connection, object);
+        void setPacketsPerSec(int pps){
+            int ceiling = pps > 0 ? pps : 1;
 
-            currentTime = System.currentTimeMillis();
+            if (engine.getCongestion() != null)
+                engine.getCongestion().setCeiling(ceiling);
+            else
+                pacer.setRate(ceiling);
+        }
 
-            if(object instanceof Packet)
-            {
-                Platform.runLater(() -> conStateListener.updateRTT());
+        void stop(){ running = false; }
+    }
 
-                final Packet pckt = (Packet) object;
+    // stats of the first channel, the one the listener gets
+    SimulationStats getStats(){
+        return stats;
+    }
 
-                if(reliable){
+    // stats of the channels of the last simulation
+    SimulationStats getStats(int channel){
+        return channelStats[channel];
+    }
 
-                    if(ordered)
-                        history.cutBelow(pckt.getSequenceNumber());
-                    else
-                        history.remove(pckt.getSequenceNumber());
+    int getChannelCount(){
+        return channelStats.length;
+    }
 
-                    if(pckt.getSequenceNumber() > lastACK.get())
-                        lastACK.set(pckt.getSequenceNumber());
+    // a seeded impairment draws from a generator of its own per channel, seed + channel
+    private ImpairmentConfig impairment(int channel){
+        ImpairmentConfig impairment = this.impairment;
+        if (impairment == null || impairment.getSeed() == 0 || channel == 0)
+            return impairment;
 
-                    ++confirmed;
+        ImpairmentConfig config = impairment.copy();
+        config.setSeed(impairment.getSeed() + channel);
+        return config;
+    }
 
-                    Platform.runLater(() -> {
-                        conStateListener.update(sent,history.getSize(),confirmed,sent-confirmed);
-                        conStateListener.received(pckt.getSequenceNumber(), currentTime - pckt.getLaunchTime());
-                    });
-                }
-                else // NOT RELIABLE && NOT ORDERED
-                {
-                    lastACK.set(pckt.getSequenceNumber());
-                    ++confirmed;
-
-                    history.remove(pckt.getSequenceNumber());
-
-                    history.getElements().stream()
-                            .filter(p -> p.getLaunchTime() < currentTime - DROP_RELIABLE_PCKT_TIME)
-                            .forEach(p -> {
-                                ++lost;
-                                history.remove(p.getSequenceNumber());
-                            });
-
-                    Platform.runLater(() -> {
-                        conStateListener.update(sent, 0, confirmed, lost);
-                        conStateListener.received(pckt.getSequenceNumber(), currentTime - pckt.getLaunchTime());
-                    });
-                }
-            }
-        }
+    static int channelMtu(int channel, int mtu){
+        return channel == 0 ? mtu : mtu - PacketRegistry.CHANNEL_OVERHEAD;
+    }
 
-        @Override
-        public void disconnected(Connection connection) {
-            super.disconnected(connection);
-            Platform.runLater(() -> conStateListener.onConnectionStateChanged(ConnectionState.DISCONNECTED));
+    // the rate of the first channel
+    void setPacketsPerSec(int pps){
+        PacketSender[] senders = this.senders;
+        if(senders != null){
+            senders[0].setPacketsPerSec(pps);
         }
+    }
 
-        void setPacketsPerSec(int pps){
-            if(pps > 0)
-                this.packetsPerSec = pps;
-            else this.packetsPerSec = 1;
+    // packets the sender may send back to back after a stall, 0 for automatic
+    void setBurstSize(int packets){
+        this.burstSize = packets;
+        PacketSender[] senders = this.senders;
+        if(senders != null){
+            for (PacketSender sender : senders)
+                sender.pacer.setBurst(packets);
         }
+    }
 
-        void setLoseChance(float chance){
-            if(chance < 0)
-                this.loseChance = 0;
-            if(loseChance >= 1)
-                loseChance = 0.7f;
-            else this.loseChance = chance;
-        }
+    // the datagram size limit within what the buffers hold
+    static int validMtu(int mtu){
+        return Math.max(MIN_MTU, Math.min(mtu, OBJECT_BUFFER_SIZE));
+    }
 
-        void stop(){ running = false; }
+    void setMtu(int mtu){
+        this.mtu = validMtu(mtu);
+        PacketSender[] senders = this.senders;
+        if(senders != null){
+            for (PacketSender sender : senders)
+                sender.engine.setMtu(channelMtu(sender.channel, this.mtu));
+        }
     }
 
-    void setPacketsPerSec(int pps){
-        if(packetSender != null){
-            packetSender.setPacketsPerSec(pps);
+    // batches the unordered modes' packets for up to this long, the remote server does not support it
+    void setAggregation(long micros){
+        this.aggregationMicros = micros;
+        PacketSender[] senders = this.senders;
+        if(senders != null){
+            for (PacketSender sender : senders)
+                sender.engine.setAggregation(micros);
         }
     }
 
     void setLoseChance(float chance){
-        if(packetSender != null){
-            packetSender.setLoseChance(chance);
+        PacketSender[] senders = this.senders;
+        if(senders != null){
+            for (PacketSender sender : senders)
+                sender.engine.setLoseChance(chance);
         }
     }
 }
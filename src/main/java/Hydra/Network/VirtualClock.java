@@ -0,0 +1,35 @@
+package Hydra.Network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock which only moves when it is told to, both readings come from the same counter. Starts a second
+ * in, so no launch time is 0.
+ */
+class VirtualClock implements Clock {
+
+    private static final long START = TimeUnit.SECONDS.toNanos(1);
+
+    private long nanos = START;
+
+    @Override
+    public long nanos(){
+        return nanos;
+    }
+
+    @Override
+    public long millis(){
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    // time never runs backwards
+    void advanceTo(long nanos){
+        if (nanos > this.nanos)
+            this.nanos = nanos;
+    }
+
+    // nanoseconds since the start
+    long elapsed(){
+        return nanos - START;
+    }
+}
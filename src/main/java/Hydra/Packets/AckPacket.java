@@ -0,0 +1,46 @@
+package Hydra.Packets;
+
+
+public class AckPacket {
+
+    // number of preceding sequences covered by ackBits
+    public static final int BITS = 64;
+
+    private int latestSequence;
+    private long ackBits;
+    private long launchTime;
+
+    public AckPacket(){}
+
+    public AckPacket(int latestSequence, long ackBits, long launchTime){
+        this.latestSequence = latestSequence;
+        this.ackBits = ackBits;
+        this.launchTime = launchTime;
+    }
+
+    public int getLatestSequence(){
+        return latestSequence;
+    }
+
+    // bit i set means latestSequence - 1 - i was received
+    public long getAckBits(){
+        return ackBits;
+    }
+
+    // launch time of the packet that triggered this ACK, echoed back for RTT
+    public long getLaunchTime(){
+        return launchTime;
+    }
+
+    public void setLatestSequence(int latestSequence){
+        this.latestSequence = latestSequence;
+    }
+
+    public void setAckBits(long ackBits){
+        this.ackBits = ackBits;
+    }
+
+    public void setLaunchTime(long launchTime){
+        this.launchTime = launchTime;
+    }
+}
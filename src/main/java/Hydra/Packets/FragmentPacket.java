@@ -0,0 +1,59 @@
+package Hydra.Packets;
+
+
+/**
+ * One piece of a message too large for a datagram, its message field holds the slice. Fragments are sent,
+ * acknowledged and retransmitted like single packets and put together again by the receiver.
+ */
+public class FragmentPacket extends Packet {
+
+    private int messageId;
+    private int index;
+    private int count;
+
+    public FragmentPacket(){}
+
+    public FragmentPacket(int sequenceNumber, long launchTime, String slice, float dropChance,
+                          int messageId, int index, int count){
+        super(sequenceNumber, launchTime, slice, dropChance);
+        this.messageId = messageId;
+        this.index = index;
+        this.count = count;
+    }
+
+    public int getMessageId(){
+        return messageId;
+    }
+
+    public void setMessageId(int messageId){
+        this.messageId = messageId;
+    }
+
+    public int getIndex(){
+        return index;
+    }
+
+    public void setIndex(int index){
+        this.index = index;
+    }
+
+    // fragments of the whole message
+    public int getCount(){
+        return count;
+    }
+
+    public void setCount(int count){
+        this.count = count;
+    }
+
+    @Override
+    public void set(Packet other){
+        super.set(other);
+        if(other instanceof FragmentPacket) {
+            FragmentPacket fragment = (FragmentPacket) other;
+            this.messageId = fragment.messageId;
+            this.index = fragment.index;
+            this.count = fragment.count;
+        }
+    }
+}
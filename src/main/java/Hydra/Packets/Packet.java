@@ -9,11 +9,15 @@ public class Packet {
     private float dropChance;
     private int _serverSequence;
 
+    // launch time of the first transmission, a retransmission only restamps launchTime, never sent
+    private transient long firstLaunchTime;
+
     public Packet(){}
 
     public Packet(int sequenceNumber, long launchTime, String message, float dropChance){
         this.sequenceNumber = sequenceNumber;
         this.launchTime = launchTime;
+        this.firstLaunchTime = launchTime;
         this.message = message;
         this.dropChance = dropChance;
     }
@@ -30,6 +34,10 @@ public class Packet {
         return launchTime;
     }
 
+    public long getFirstLaunchTime(){
+        return firstLaunchTime;
+    }
+
     public String getMessage(){
         return message;
     }
@@ -46,6 +54,10 @@ public class Packet {
         this.message = message;
     }
 
+    public void setDropChance(float dropChance){
+        this.dropChance = dropChance;
+    }
+
     public void setServerSequence(int sequence){
         this._serverSequence = sequence;
     }
@@ -53,4 +65,14 @@ public class Packet {
     public int getServerSequence(){
         return this._serverSequence;
     }
+
+    // copies every field of the other packet
+    public void set(Packet other){
+        this.sequenceNumber = other.sequenceNumber;
+        this.launchTime = other.launchTime;
+        this.message = other.message;
+        this.dropChance = other.dropChance;
+        this._serverSequence = other._serverSequence;
+        this.firstLaunchTime = other.firstLaunchTime;
+    }
 }
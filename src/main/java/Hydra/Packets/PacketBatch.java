@@ -0,0 +1,6 @@
+package Hydra.Packets;
+
+
+// independent packets sharing one datagram, unpacked and handled one by one unlike the ordered container
+public class PacketBatch extends PacketContainer {
+}
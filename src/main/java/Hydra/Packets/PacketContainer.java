@@ -1,55 +1,42 @@
 package Hydra.Packets;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.List;
 
+// wire snapshot of outstanding packets, bookkeeping lives in PacketWindow
 public class PacketContainer{
 
-    private final CopyOnWriteArrayList<Packet> packets;
+    // sent as the CopyOnWriteArrayList the wire format was defined with, see PacketCodec
+    private final ArrayList<Packet> packets;
 
     public PacketContainer(){
-        packets = new CopyOnWriteArrayList<>();
+        packets = new ArrayList<>();
     }
 
     public void add(Packet e){
-        synchronized (PacketContainer.this){
-            packets.add(e);
-        }
+        packets.add(e);
     }
 
-    public LinkedList<Packet> getElements(){
-        synchronized (PacketContainer.this) {
-            return new LinkedList<>(packets);
-        }
-    }
-
-    public void cutBelow(Packet param){
-        synchronized (PacketContainer.this){
-            packets.removeIf(pckt -> pckt.getSequenceNumber() < param.getSequenceNumber());
-        }
+    public void clear(){
+        packets.clear();
     }
 
-    public void cutBelow(int param){
-        synchronized (PacketContainer.this){
-            packets.removeIf(pckt -> pckt.getSequenceNumber() < param);
-        }
+    public void setElements(List<Packet> elements){
+        packets.clear();
+        for(int i = 0; i < elements.size(); i++)
+            packets.add(elements.get(i));
     }
 
-    public void remove(Packet param){
-        synchronized (PacketContainer.this){
-            packets.removeIf(pckt -> pckt.getSequenceNumber() == param.getSequenceNumber());
-        }
+    public LinkedList<Packet> getElements(){
+        return new LinkedList<>(packets);
     }
 
-    public void remove(int param){
-        synchronized (PacketContainer.this){
-            packets.removeIf(pckt -> pckt.getSequenceNumber() == param);
-        }
+    public Packet get(int index){
+        return packets.get(index);
     }
 
     public int getSize(){
-        synchronized (PacketContainer.this) {
-            return packets.size();
-        }
+        return packets.size();
     }
 }
@@ -0,0 +1,241 @@
+package Hydra.Packets;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Retransmission window of unacknowledged packets, indexed by {@code sequence % capacity}.
+ *
+ * Concurrency contract: exactly one thread (the sender) calls {@link #add}, {@link #evictOldest}
+ * and is the only one advancing the window base. Acknowledgements ({@link #remove}, {@link #cutBelow})
+ * may come from one other thread (the network receive thread). Iteration with {@link #first()} /
+ * {@link #next(int)} while {@link #contains(int)} never allocates and is weakly consistent: it may still
+ * see packets that are being acknowledged concurrently.
+ *
+ * Sequences are compared by their difference only, so they may wrap around the int range.
+ */
+public class PacketWindow {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Packet> slots;
+    private final AtomicInteger size = new AtomicInteger();
+
+    // per-slot transmission bookkeeping, sender thread only
+    private final long[] sentAt;
+    private final int[] transmissions;
+
+    // written by the sender thread only
+    private volatile int base;
+    private volatile int head;
+
+    public PacketWindow(int capacity){
+        if(capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Window capacity must be a power of two: " + capacity);
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sentAt = new long[capacity];
+        this.transmissions = new int[capacity];
+    }
+
+    /**
+     * Inserts the next packet. Sequence numbers must be added in increasing order.
+     * Returns false when the window is full; the packet is not stored in that case.
+     */
+    public boolean add(Packet packet){
+        int sequence = packet.getSequenceNumber();
+
+        if(size.get() == 0){
+            // nothing outstanding, the window restarts at the new sequence
+            base = sequence;
+        } else {
+            advance();
+            if(sequence - base >= capacity)
+                return false;
+        }
+
+        sentAt[sequence & mask] = 0;
+        transmissions[sequence & mask] = 0;
+        slots.set(sequence & mask, packet);
+        size.incrementAndGet();
+        head = sequence + 1;
+        return true;
+    }
+
+    // records a transmission of an outstanding packet, sender thread only
+    public void markSent(int sequence, long time){
+        sentAt[sequence & mask] = time;
+        transmissions[sequence & mask]++;
+    }
+
+    public long getSentAt(int sequence){
+        return sentAt[sequence & mask];
+    }
+
+    // 0 until the packet went out for the first time
+    public int getTransmissions(int sequence){
+        return transmissions[sequence & mask];
+    }
+
+    public Packet get(int sequence){
+        if(!contains(sequence))
+            return null;
+
+        Packet packet = slots.get(sequence & mask);
+        return packet != null && packet.getSequenceNumber() == sequence ? packet : null;
+    }
+
+    /**
+     * Acknowledges a single sequence number. Returns false if it was not outstanding.
+     */
+    public boolean remove(int sequence){
+        return take(sequence) != null;
+    }
+
+    /**
+     * Acknowledges a single sequence number and returns its packet, or null if it was not outstanding.
+     */
+    public Packet take(int sequence){
+        Packet packet = get(sequence);
+        if(packet == null || !slots.compareAndSet(sequence & mask, packet, null))
+            return null;
+
+        size.decrementAndGet();
+        return packet;
+    }
+
+    /**
+     * Acknowledges the latest sequence plus every preceding one flagged in the bitmap,
+     * bit i standing for {@code latest - 1 - i}. Returns the number of packets removed.
+     */
+    public int acknowledge(int latest, long bits){
+        return acknowledge(latest, bits, null);
+    }
+
+    // as above, handing every removed packet to the consumer if there is one
+    public int acknowledge(int latest, long bits, Consumer<Packet> removed){
+        int count = removed(take(latest), removed);
+
+        while(bits != 0){
+            count += removed(take(latest - 1 - Long.numberOfTrailingZeros(bits)), removed);
+            bits &= bits - 1;
+        }
+        return count;
+    }
+
+    /**
+     * Acknowledges every outstanding sequence lower than the given one.
+     * Returns the number of packets removed.
+     */
+    public int cutBelow(int sequence){
+        return cutBelow(sequence, null);
+    }
+
+    // as above, handing every removed packet to the consumer if there is one
+    public int cutBelow(int sequence, Consumer<Packet> removed){
+        int count = 0;
+        int end = head;
+
+        if(sequence - end > 0)
+            sequence = end;
+
+        for(int s = base; s - sequence < 0; s++)
+            count += removed(take(s), removed);
+        return count;
+    }
+
+    private static int removed(Packet packet, Consumer<Packet> removed){
+        if(packet == null)
+            return 0;
+        if(removed != null)
+            removed.accept(packet);
+        return 1;
+    }
+
+    /**
+     * Removes and returns the oldest outstanding packet, or null if the window is empty.
+     * Sender thread only.
+     */
+    public Packet evictOldest(){
+        advance();
+
+        int sequence = first();
+        if(!contains(sequence))
+            return null;
+
+        Packet packet = get(sequence);
+        return packet != null && remove(sequence) ? packet : null;
+    }
+
+    public int first(){
+        return next(base - 1);
+    }
+
+    /**
+     * Returns the first outstanding sequence after the given one, or the end of the window which
+     * {@link #contains(int)} is false for. No sequence is reserved as a marker, every int may be used.
+     */
+    public int next(int sequence){
+        int end = head;
+        int s = sequence + 1;
+
+        if(s - base < 0)
+            s = base;
+
+        for(; s - end < 0; s++){
+            Packet packet = slots.get(s & mask);
+            if(packet != null && packet.getSequenceNumber() == s)
+                return s;
+        }
+        return end;
+    }
+
+    public boolean contains(int sequence){
+        return sequence - base >= 0 && sequence - head < 0;
+    }
+
+    // sender thread only
+    public boolean isFull(){
+        return isFull(capacity);
+    }
+
+    // full once the outstanding sequences span the given number, at most the capacity, sender thread only
+    public boolean isFull(int span){
+        advance();
+        return size.get() > 0 && head - base >= Math.min(span, capacity);
+    }
+
+    public int getSize(){
+        return size.get();
+    }
+
+    public int getCapacity(){
+        return capacity;
+    }
+
+    public int getBase(){
+        return base;
+    }
+
+    public void clear(){
+        for(int i = 0; i < capacity; i++)
+            slots.set(i, null);
+
+        size.set(0);
+        base = head;
+    }
+
+    // moves the base over acknowledged slots so that they can be reused
+    private void advance(){
+        int s = base;
+        int end = head;
+
+        while(s - end < 0 && slots.get(s & mask) == null)
+            s++;
+
+        base = s;
+    }
+}
@@ -0,0 +1,35 @@
+package Hydra.Packets;
+
+
+/**
+ * A Packet in the compact form for servers which took the payload dictionary: the ID of its message, the low
+ * 16 bits of the sequence and the launch time relative to the start of the simulation. The drop chance and
+ * the server sequence are not sent.
+ */
+public class PayloadPacket extends Packet {
+
+    // index in the payload dictionary + 1
+    private int payloadId;
+
+    public PayloadPacket(){}
+
+    public PayloadPacket(int sequenceNumber, long launchTime, String message, int payloadId, float dropChance){
+        super(sequenceNumber, launchTime, message, dropChance);
+        this.payloadId = payloadId;
+    }
+
+    public int getPayloadId(){
+        return payloadId;
+    }
+
+    public void setPayloadId(int payloadId){
+        this.payloadId = payloadId;
+    }
+
+    @Override
+    public void set(Packet other){
+        super.set(other);
+        if(other instanceof PayloadPacket)
+            this.payloadId = ((PayloadPacket) other).payloadId;
+    }
+}
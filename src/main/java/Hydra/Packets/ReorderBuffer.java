@@ -0,0 +1,109 @@
+package Hydra.Packets;
+
+/**
+ * Receive side of the ordered mode: sequences arriving ahead of a gap wait in a bounded window, indexed by
+ * {@code sequence % capacity}, and are handed to the delivery callback in order once the gap is filled.
+ * Every delivery reports how long the packet was held back by the ones before it, its head-of-line delay.
+ *
+ * One thread offers sequences and receives the callbacks, the occupancy may be read from any thread.
+ * Sequences are compared by their difference only, so they may wrap around the int range.
+ */
+public class ReorderBuffer {
+
+    public interface Delivery {
+        void delivered(int sequence, long launchTime, long heldFor);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final Delivery delivery;
+
+    private final boolean[] buffered;
+    private final long[] launchTimes;
+    private final long[] arrivals;
+
+    private int next = 0;
+    private volatile int occupancy = 0;
+    private volatile int maxOccupancy = 0;
+
+    // capacity must be a power of two
+    public ReorderBuffer(int capacity, Delivery delivery){
+        if(Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.delivery = delivery;
+        this.buffered = new boolean[capacity];
+        this.launchTimes = new long[capacity];
+        this.arrivals = new long[capacity];
+    }
+
+    /**
+     * Takes a sequence received at the given time and delivers every sequence it unblocks. Returns false for
+     * sequences already delivered or buffered, and for those too far ahead for the window.
+     */
+    public boolean offer(int sequence, long launchTime, long now){
+        int ahead = sequence - next;
+        if(ahead < 0 || ahead >= capacity || buffered[sequence & mask])
+            return false;
+
+        int slot = sequence & mask;
+        buffered[slot] = true;
+        launchTimes[slot] = launchTime;
+        arrivals[slot] = now;
+
+        if(ahead > 0) {
+            int waiting = occupancy + 1;
+            occupancy = waiting;
+            if(waiting > maxOccupancy)
+                maxOccupancy = waiting;
+            return true;
+        }
+
+        // the gap is filled, the packet itself was not held back and everything waiting behind it follows
+        int waiting = occupancy + 1;
+        for(slot = next & mask; buffered[slot]; slot = next & mask)
+        {
+            buffered[slot] = false;
+            delivery.delivered(next, launchTimes[slot], now - arrivals[slot]);
+            next++;
+            waiting--;
+        }
+        occupancy = waiting;
+        return true;
+    }
+
+    // true if the sequence waits in the window
+    public boolean isBuffered(int sequence){
+        int ahead = sequence - next;
+        return ahead >= 0 && ahead < capacity && buffered[sequence & mask];
+    }
+
+    // next sequence to deliver
+    public int getNext(){
+        return next;
+    }
+
+    // sequences waiting behind a gap
+    public int getOccupancy(){
+        return occupancy;
+    }
+
+    public int getMaxOccupancy(){
+        return maxOccupancy;
+    }
+
+    public int getCapacity(){
+        return capacity;
+    }
+
+    // starts over expecting the given sequence
+    public void reset(int next){
+        for(int i = 0; i < capacity; i++)
+            buffered[i] = false;
+        this.next = next;
+        occupancy = 0;
+        maxOccupancy = 0;
+    }
+}
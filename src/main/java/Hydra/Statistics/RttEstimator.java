@@ -0,0 +1,71 @@
+package Hydra.Statistics;
+
+/**
+ * Jacobson/Karels smoothed RTT and RTT variance, with the retransmission timeout derived as in RFC 6298.
+ * One thread adds samples, any thread may read.
+ */
+public class RttEstimator {
+
+    private static final double ALPHA = 1 / 8d;
+    private static final double BETA = 1 / 4d;
+    private static final int K = 4;
+
+    // all values are in milliseconds
+    private static final long INITIAL_RTO = 1_000;
+    private static final long MIN_RTO = 20;
+    private static final long MAX_RTO = 60_000;
+    private static final long CLOCK_GRANULARITY = 1;
+    private static final int MAX_BACKOFF_SHIFT = 10;
+
+    // transmissions after which the timeout stops doubling
+    public static final int BACKOFF_LIMIT = MAX_BACKOFF_SHIFT + 1;
+
+    private volatile double srtt;
+    private volatile double rttvar;
+    private volatile boolean measured;
+
+    public void addSample(long rtt){
+        if(!measured){
+            srtt = rtt;
+            rttvar = rtt / 2d;
+            measured = true;
+            return;
+        }
+
+        rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - rtt);
+        srtt = (1 - ALPHA) * srtt + ALPHA * rtt;
+    }
+
+    public boolean hasSample(){
+        return measured;
+    }
+
+    public long getSmoothedRtt(){
+        return Math.round(srtt);
+    }
+
+    public long getRttVariance(){
+        return Math.round(rttvar);
+    }
+
+    public long getRetransmissionTimeout(){
+        if(!measured)
+            return INITIAL_RTO;
+
+        long rto = Math.round(srtt + Math.max(CLOCK_GRANULARITY, K * rttvar));
+        return Math.max(MIN_RTO, Math.min(rto, MAX_RTO));
+    }
+
+    /**
+     * Timeout of a packet that already went out the given number of times, doubled per retransmission.
+     */
+    public long getRetransmissionTimeout(int transmissions){
+        int backoff = Math.max(0, Math.min(transmissions - 1, MAX_BACKOFF_SHIFT));
+        return Math.min(getRetransmissionTimeout() << backoff, MAX_RTO);
+    }
+
+    public void reset(){
+        measured = false;
+        srtt = rttvar = 0;
+    }
+}
@@ -0,0 +1,120 @@
+package Hydra.Statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory histogram with logarithmic buckets. Values below 64 are exact, above that every power of
+ * two is split into 32 buckets, so reported values are within ~3% of the recorded ones.
+ *
+ * One thread records, any thread may read; reads taken during recording are approximate.
+ */
+public class RttHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS << 1;
+
+    // highest power of two that gets its own buckets
+    private static final int MAX_EXPONENT = 40;
+    public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private volatile long count;
+    private volatile long sum;
+    private volatile long max;
+
+    public void record(long value){
+        if(value < 0)
+            value = 0;
+        else if(value > MAX_VALUE)
+            value = MAX_VALUE;
+
+        int index = indexOf(value);
+        counts.lazySet(index, counts.get(index) + 1);
+
+        sum += value;
+        if(value > max)
+            max = value;
+        count++;
+    }
+
+    // adds the other histogram's counts, only on the recording thread or on a private copy
+    public void add(RttHistogram other){
+        for(int i = 0; i < BUCKETS; i++){
+            long c = other.counts.get(i);
+            if(c != 0)
+                counts.lazySet(i, counts.get(i) + c);
+        }
+
+        sum += other.sum;
+        if(other.max > max)
+            max = other.max;
+        count += other.count;
+    }
+
+    public void reset(){
+        for(int i = 0; i < BUCKETS; i++)
+            counts.lazySet(i, 0);
+
+        count = sum = max = 0;
+    }
+
+    public long getCount(){
+        return count;
+    }
+
+    public long getMax(){
+        return max;
+    }
+
+    public long getMean(){
+        long c = count;
+        return c == 0 ? 0 : sum / c;
+    }
+
+    /**
+     * Returns the highest value equivalent to the given percentile (0-100), 0 for an empty histogram.
+     */
+    public long getValueAtPercentile(double percentile){
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++)
+            total += counts.get(i);
+
+        if(total == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+        long seen = 0;
+
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts.get(i);
+            if(seen >= target)
+                return Math.min(highestValueOf(i), max);
+        }
+        return max;
+    }
+
+    private static int indexOf(long value){
+        if(value < LINEAR_LIMIT)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> shift) - SUB_BUCKETS;
+
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + mantissa;
+    }
+
+    private static long highestValueOf(int index){
+        if(index < LINEAR_LIMIT)
+            return index;
+
+        int bucket = index - LINEAR_LIMIT;
+        int shift = bucket / SUB_BUCKETS + 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
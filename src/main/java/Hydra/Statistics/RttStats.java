@@ -0,0 +1,110 @@
+package Hydra.Statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * RTT samples of a simulation: a histogram over the whole run, a sliding window made of rotating
+ * interval histograms, and the smoothed estimate. Samples come from one thread and never allocate.
+ * The window slides with the time of the samples, readers leave out the intervals which passed since.
+ */
+public class RttStats {
+
+    private static final int WINDOW_SLOTS = 10;
+    private static final long SLOT_MILLIS = 1_000;
+
+    private final RttHistogram total = new RttHistogram();
+    private final RttHistogram[] window = new RttHistogram[WINDOW_SLOTS];
+    private final RttEstimator estimator = new RttEstimator();
+
+    // end of the interval of every slot, written by the recording thread
+    private final AtomicLongArray slotEnds = new AtomicLongArray(WINDOW_SLOTS);
+    private volatile LongSupplier time = System::currentTimeMillis;
+
+    // recording thread only
+    private int currentSlot;
+    private long slotEnd = Long.MIN_VALUE;
+
+    public RttStats(){
+        for(int i = 0; i < WINDOW_SLOTS; i++){
+            window[i] = new RttHistogram();
+            slotEnds.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    // the clock the samples are recorded with, in milliseconds, the system time by default
+    public void setTime(LongSupplier millis){
+        this.time = millis;
+    }
+
+    public void record(long rtt, long now){
+        rotate(now);
+
+        total.record(rtt);
+        window[currentSlot].record(rtt);
+        estimator.addSample(rtt);
+    }
+
+    public RttHistogram getTotal(){
+        return total;
+    }
+
+    public RttEstimator getEstimator(){
+        return estimator;
+    }
+
+    // length of the sliding window in milliseconds
+    public long getWindowMillis(){
+        return WINDOW_SLOTS * SLOT_MILLIS;
+    }
+
+    /**
+     * Merges the sliding window as of now into the given histogram, which is reset first.
+     */
+    public RttHistogram window(RttHistogram into){
+        return window(into, time.getAsLong());
+    }
+
+    // as above, for the given time of the recording clock
+    public RttHistogram window(RttHistogram into, long now){
+        into.reset();
+        long start = now - getWindowMillis();
+
+        for(int i = 0; i < WINDOW_SLOTS; i++){
+            if(slotEnds.get(i) > start)
+                into.add(window[i]);
+        }
+        return into;
+    }
+
+    public void reset(){
+        total.reset();
+        for(int i = 0; i < WINDOW_SLOTS; i++){
+            window[i].reset();
+            slotEnds.set(i, Long.MIN_VALUE);
+        }
+        estimator.reset();
+        slotEnd = Long.MIN_VALUE;
+    }
+
+    private void rotate(long now){
+        if(slotEnd == Long.MIN_VALUE){
+            slotEnd = now + SLOT_MILLIS;
+            slotEnds.set(currentSlot, slotEnd);
+            return;
+        }
+
+        // every elapsed interval empties one slot, a long pause clears the whole window
+        for(int i = 0; now >= slotEnd && i < WINDOW_SLOTS; i++){
+            currentSlot = (currentSlot + 1) % WINDOW_SLOTS;
+            window[currentSlot].reset();
+            slotEnd += SLOT_MILLIS;
+            slotEnds.set(currentSlot, slotEnd);
+        }
+
+        if(now >= slotEnd){
+            slotEnd = now + SLOT_MILLIS;
+            slotEnds.set(currentSlot, slotEnd);
+        }
+    }
+}
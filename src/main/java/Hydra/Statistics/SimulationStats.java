@@ -0,0 +1,158 @@
+package Hydra.Statistics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters, gauges and RTT statistics of one simulation. Counters are striped, so the sender and receive threads
+ * never contend on them; gauges are read from their owners only when a snapshot is taken.
+ */
+public class SimulationStats {
+
+    private static final IntSupplier ZERO = () -> 0;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+
+    // messages split into fragments, the counters above count the fragments
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder messagesDelivered = new LongAdder();
+    private final LongAdder messagesLost = new LongAdder();
+
+    // ordered mode: packets delivered in sequence and how long each waited for the ones before it
+    private final LongAdder delivered = new LongAdder();
+    private final RttHistogram headOfLine = new RttHistogram();
+
+    // ordered mode: first transmission to delivery in sequence, retransmissions and waiting included
+    private final RttHistogram deliveryDelay = new RttHistogram();
+
+    private final RttStats rtt = new RttStats();
+
+    private volatile IntSupplier windowSize = ZERO;
+    private volatile IntSupplier clientSequence = ZERO;
+    private volatile IntSupplier serverSequence = ZERO;
+    private volatile IntSupplier pacingRate = ZERO;
+    private volatile IntSupplier reorderOccupancy = ZERO;
+    private volatile IntSupplier maxReorderOccupancy = ZERO;
+
+    public void incrementSent(){
+        sent.increment();
+    }
+
+    public void addSent(long count){
+        sent.add(count);
+    }
+
+    public void incrementConfirmed(){
+        confirmed.increment();
+    }
+
+    public void addConfirmed(long count){
+        confirmed.add(count);
+    }
+
+    public void incrementLost(){
+        lost.increment();
+    }
+
+    public void addLost(long count){
+        lost.add(count);
+    }
+
+    // every fragment went out once
+    public void incrementMessagesSent(){
+        messagesSent.increment();
+    }
+
+    // every fragment was acknowledged
+    public void incrementMessagesDelivered(){
+        messagesDelivered.increment();
+    }
+
+    // at least one fragment was given up
+    public void incrementMessagesLost(){
+        messagesLost.increment();
+    }
+
+    // receive thread only
+    public void recordDelivery(long heldFor, long sinceFirstSend){
+        delivered.increment();
+        headOfLine.record(heldFor);
+        deliveryDelay.record(sinceFirstSend);
+    }
+
+    public RttHistogram getHeadOfLine(){
+        return headOfLine;
+    }
+
+    public RttHistogram getDeliveryDelay(){
+        return deliveryDelay;
+    }
+
+    // receive thread only
+    public void recordRtt(long rtt, long now){
+        this.rtt.record(rtt, now);
+    }
+
+    public RttStats getRtt(){
+        return rtt;
+    }
+
+    public void setGauges(IntSupplier windowSize, IntSupplier clientSequence, IntSupplier serverSequence,
+                          IntSupplier pacingRate){
+        this.windowSize = windowSize;
+        this.clientSequence = clientSequence;
+        this.serverSequence = serverSequence;
+        this.pacingRate = pacingRate;
+    }
+
+    // packets waiting behind a gap in the reorder buffer, now and at most
+    public void setReorderGauges(IntSupplier occupancy, IntSupplier maxOccupancy){
+        this.reorderOccupancy = occupancy;
+        this.maxReorderOccupancy = maxOccupancy;
+    }
+
+    /**
+     * Fills the given snapshot. Outcomes are read before sent, and packets are always counted as sent
+     * before they are confirmed or lost, so a snapshot never shows more outcomes than transmissions.
+     */
+    public StatsSnapshot snapshot(StatsSnapshot into){
+        into.lost = lost.sum();
+        into.confirmed = confirmed.sum();
+        into.sent = sent.sum();
+
+        into.messagesLost = messagesLost.sum();
+        into.messagesDelivered = messagesDelivered.sum();
+        into.messagesSent = messagesSent.sum();
+        into.delivered = delivered.sum();
+
+        into.serverSequence = serverSequence.getAsInt();
+        into.clientSequence = clientSequence.getAsInt();
+        into.windowSize = windowSize.getAsInt();
+        into.pacingRate = pacingRate.getAsInt();
+        into.reorderOccupancy = reorderOccupancy.getAsInt();
+        into.maxReorderOccupancy = maxReorderOccupancy.getAsInt();
+        return into;
+    }
+
+    public StatsSnapshot snapshot(){
+        return snapshot(new StatsSnapshot());
+    }
+
+    // only while no simulation is updating the counters
+    public void reset(){
+        sent.reset();
+        confirmed.reset();
+        lost.reset();
+        messagesSent.reset();
+        messagesDelivered.reset();
+        messagesLost.reset();
+        delivered.reset();
+        headOfLine.reset();
+        deliveryDelay.reset();
+        rtt.reset();
+        setGauges(ZERO, ZERO, ZERO, ZERO);
+        setReorderGauges(ZERO, ZERO);
+    }
+}
@@ -0,0 +1,72 @@
+package Hydra.Statistics;
+
+public class StatsSnapshot {
+
+    long sent, confirmed, lost;
+    long messagesSent, messagesDelivered, messagesLost;
+    long delivered;
+    int reorderOccupancy, maxReorderOccupancy;
+    int windowSize;
+    int pacingRate;
+    int clientSequence, serverSequence;
+
+    public long getSent(){
+        return sent;
+    }
+
+    public long getConfirmed(){
+        return confirmed;
+    }
+
+    public long getLost(){
+        return lost;
+    }
+
+    // messages split into fragments, 0 while the message fits into one datagram
+    public long getMessagesSent(){
+        return messagesSent;
+    }
+
+    public long getMessagesDelivered(){
+        return messagesDelivered;
+    }
+
+    public long getMessagesLost(){
+        return messagesLost;
+    }
+
+    // packets of the ordered mode delivered in sequence
+    public long getDelivered(){
+        return delivered;
+    }
+
+    // packets waiting behind a gap to be delivered
+    public int getReorderOccupancy(){
+        return reorderOccupancy;
+    }
+
+    public int getMaxReorderOccupancy(){
+        return maxReorderOccupancy;
+    }
+
+    public int getWindowSize(){
+        return windowSize;
+    }
+
+    // packets per second the sender is currently paced at
+    public int getPacingRate(){
+        return pacingRate;
+    }
+
+    public int getClientSequence(){
+        return clientSequence;
+    }
+
+    public int getServerSequence(){
+        return serverSequence;
+    }
+
+    public int getSequenceGap(){
+        return clientSequence - serverSequence;
+    }
+}
@@ -0,0 +1,73 @@
+package Hydra.Network;
+
+import Hydra.Packets.Packet;
+import Hydra.Packets.PacketBatch;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Batches go through the impairment as the one datagram they are.
+ */
+public class CoalescerTest {
+
+    private final VirtualClock clock = new VirtualClock();
+
+    // packets per datagram, the coalescer reuses its batch
+    private final ArrayList<Integer> sent = new ArrayList<>();
+    private final ArrayList<Integer> dropped = new ArrayList<>();
+
+    @Test
+    public void batchIsOneDatagram(){
+        Coalescer coalescer = coalescer(0);
+        for (int sequence = 0; sequence < 3; sequence++)
+            assertTrue(coalescer.send(new Packet(sequence, 0, "Packet Message", 0f)));
+        assertEquals(0, sent.size());
+
+        clock.advanceTo(clock.nanos() + 1_000_000);
+        coalescer.flush();
+
+        assertEquals(1, sent.size());
+        assertEquals(3, (int) sent.get(0));
+        assertEquals(0, dropped.size());
+    }
+
+    // the loss applies to the datagram, so every packet in it is reported
+    @Test
+    public void lostBatchLosesEveryPacket(){
+        Coalescer coalescer = coalescer(1);
+        for (int sequence = 0; sequence < 3; sequence++)
+            assertTrue(coalescer.send(new Packet(sequence, 0, "Packet Message", 0f)));
+
+        clock.advanceTo(clock.nanos() + 1_000_000);
+        coalescer.flush();
+
+        assertEquals(0, sent.size());
+        assertEquals(3, dropped.size());
+        assertEquals(0, (int) dropped.get(0));
+        assertEquals(2, (int) dropped.get(2));
+    }
+
+    // without a deadline the outcome is known at once
+    @Test
+    public void unbatchedPacketsReportTheirLoss(){
+        Coalescer coalescer = coalescer(1);
+        coalescer.setDeadline(0);
+
+        assertFalse(coalescer.send(new Packet(0, 0, "Packet Message", 0f)));
+        assertEquals(0, dropped.size());
+    }
+
+    private Coalescer coalescer(double loss){
+        Impairment link = new Impairment(new ImpairmentConfig(), loss,
+                object -> sent.add(object instanceof PacketBatch ? ((PacketBatch) object).getSize() : 1), clock);
+        Coalescer coalescer = new Coalescer(link, UDPClient.DEFAULT_MTU, clock,
+                packet -> dropped.add(packet.getSequenceNumber()));
+        coalescer.setDeadline(500);
+        return coalescer;
+    }
+}
@@ -0,0 +1,79 @@
+package Hydra.Network;
+
+import Hydra.Packets.Packet;
+import Hydra.Packets.PayloadPacket;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Expansion of the 16 bit sequences of compact packets, read back from the echo the channel sends.
+ */
+public class LoopbackChannelTest {
+
+    private final ArrayList<Object> sent = new ArrayList<>();
+    private final LoopbackChannel channel = new LoopbackChannel(sent::add, 0, DeliveryMode.RELIABLE, false,
+            new String[] { "Packet Message" }, Clock.SYSTEM);
+
+    @Test
+    public void sequencesContinueAcrossTheWrap(){
+        assertEquals(65_534, receive(65_534));
+        assertEquals(65_535, receive(65_535));
+        assertEquals(65_536, receive(65_536));
+        assertEquals(65_537, receive(65_537));
+    }
+
+    @Test
+    public void latePacketsExpandBehindTheHighest(){
+        advanceTo(65_537);
+
+        assertEquals(65_533, receive(65_533));
+
+        // a late packet does not move the reference back
+        assertEquals(65_538, receive(65_538));
+    }
+
+    @Test
+    public void expandsWithinHalfTheSequenceSpace(){
+        advanceTo(40_000);
+
+        int highest = 40_000 + (1 << 15) - 1;
+        assertEquals(highest, receive(highest));
+        assertEquals(highest - (1 << 15), receive(highest - (1 << 15)));
+    }
+
+    @Test
+    public void halfTheSequenceSpaceBehindIsStillBehind(){
+        advanceTo(100_000);
+
+        // 2^15 either way carries the same low bits, it counts as late
+        assertEquals(100_000 - (1 << 15), receive(100_000 - (1 << 15)));
+        assertEquals(100_000 - (1 << 15), receive(100_000 + (1 << 15)));
+    }
+
+    @Test
+    public void manyWraps(){
+        for (int sequence = 0; sequence < 1 << 20; sequence += (1 << 15) - 1)
+            assertEquals(sequence, receive(sequence));
+    }
+
+    // the first packet is taken as it is, later ones expand next to the highest, as a sender counts up from 0
+    private void advanceTo(int sequence){
+        for (int next = 0; next < sequence; next += (1 << 15) - 1)
+            receive(next);
+        receive(sequence);
+    }
+
+    // sends the low 16 bits of the sequence, returns the sequence the echo carries
+    private int receive(int sequence){
+        sent.clear();
+        channel.received(new PayloadPacket(sequence & 0xFFFF, 0, null, 1, 0f));
+
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0) instanceof Packet);
+        return ((Packet) sent.get(0)).getSequenceNumber();
+    }
+}
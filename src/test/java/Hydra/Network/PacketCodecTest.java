@@ -0,0 +1,166 @@
+package Hydra.Network;
+
+import Hydra.Packets.AckPacket;
+import Hydra.Packets.Packet;
+import Hydra.Packets.PacketContainer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryonet.KryoSerialization;
+import org.junit.Test;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The hand-written serializers against what Kryo's FieldSerializer makes of the same classes, which is
+ * what servers without them speak. Both sides are configured like the transports configure Kryo.
+ */
+public class PacketCodecTest {
+
+    // PacketContainer as the wire format was defined, FieldSerializer writes its list with the class
+    public static class WireContainer {
+        public CopyOnWriteArrayList<Packet> packets = new CopyOnWriteArrayList<>();
+    }
+
+    private final Kryo codec = new KryoSerialization().getKryo();
+    private final Kryo reference = new KryoSerialization().getKryo();
+
+    public PacketCodecTest(){
+        PacketRegistry.register(codec);
+
+        // the order of PacketRegistry up to the types the codec handles, so the class ids match
+        reference.register(CopyOnWriteArrayList.class);
+        reference.register(WireContainer.class);
+        reference.register(Packet.class);
+        reference.register(PacketRegistry.InitialPacket.class);
+        reference.register(AckPacket.class);
+    }
+
+    @Test
+    public void packetMatchesFieldSerializer(){
+        assertPacket(new Packet(42, 1_500_000_000_000L, "Packet Message", 0.25f));
+    }
+
+    @Test
+    public void packetWithoutMessage(){
+        assertPacket(new Packet(7, 3, null, 0f));
+    }
+
+    @Test
+    public void packetWithNonAsciiMessage(){
+        assertPacket(new Packet(Integer.MAX_VALUE, Long.MAX_VALUE,
+                "Gr\u00f6\u00dfe \u00e9t\u00e9 \u65e5\u672c \u2713", 0.7f));
+    }
+
+    @Test
+    public void packetWithNegativeFields(){
+        Packet packet = new Packet(-1, -5, "Packet Message", -0.5f);
+        packet.setServerSequence(Integer.MIN_VALUE);
+        assertPacket(packet);
+    }
+
+    // the codec matches repeated messages against the last one, a different one has to be read in full
+    @Test
+    public void changedMessageIsDecoded(){
+        Output output = new Output(256, -1);
+        codec.writeClassAndObject(output, new Packet(1, 10, "first", 0f));
+        codec.writeClassAndObject(output, new Packet(2, 20, "first", 0f));
+        codec.writeClassAndObject(output, new Packet(3, 30, "firsT", 0f));
+        codec.writeClassAndObject(output, new Packet(4, 40, null, 0f));
+        codec.writeClassAndObject(output, new Packet(5, 50, "first", 0f));
+
+        Input input = new Input(output.toBytes());
+        assertEquals("first", ((Packet) codec.readClassAndObject(input)).getMessage());
+        assertEquals("first", ((Packet) codec.readClassAndObject(input)).getMessage());
+        assertEquals("firsT", ((Packet) codec.readClassAndObject(input)).getMessage());
+        assertNull(((Packet) codec.readClassAndObject(input)).getMessage());
+
+        Packet last = (Packet) codec.readClassAndObject(input);
+        assertEquals(5, last.getSequenceNumber());
+        assertEquals("first", last.getMessage());
+    }
+
+    @Test
+    public void containerMatchesFieldSerializer(){
+        Packet[] packets = {
+                new Packet(100, 1_000, "Packet Message", 0.1f),
+                new Packet(101, 1_001, null, 0.1f),
+                new Packet(102, 1_002, "\u00fcber", 0.1f)
+        };
+
+        PacketContainer container = new PacketContainer();
+        WireContainer wire = new WireContainer();
+        for (Packet packet : packets)
+        {
+            container.add(packet);
+            wire.packets.add(packet);
+        }
+
+        byte[] encoded = write(codec, container);
+        assertArrayEquals(write(reference, wire), encoded);
+
+        PacketContainer decoded = (PacketContainer) read(codec, encoded);
+        assertEquals(packets.length, decoded.getSize());
+        for (int i = 0; i < packets.length; i++)
+            assertPacket(packets[i], decoded.get(i));
+
+        WireContainer decodedWire = (WireContainer) read(reference, encoded);
+        assertEquals(packets.length, decodedWire.packets.size());
+        for (int i = 0; i < packets.length; i++)
+            assertPacket(packets[i], decodedWire.packets.get(i));
+    }
+
+    @Test
+    public void emptyContainer(){
+        byte[] encoded = write(codec, new PacketContainer());
+        assertArrayEquals(write(reference, new WireContainer()), encoded);
+        assertEquals(0, ((PacketContainer) read(codec, encoded)).getSize());
+    }
+
+    @Test
+    public void ackPacketMatchesFieldSerializer(){
+        AckPacket ack = new AckPacket(65_537, 0x8000_0000_0000_0001L, 1_500_000_000_000L);
+
+        byte[] encoded = write(codec, ack);
+        assertArrayEquals(write(reference, ack), encoded);
+
+        for (Kryo kryo : new Kryo[] { codec, reference })
+        {
+            AckPacket decoded = (AckPacket) read(kryo, encoded);
+            assertEquals(ack.getLatestSequence(), decoded.getLatestSequence());
+            assertEquals(ack.getAckBits(), decoded.getAckBits());
+            assertEquals(ack.getLaunchTime(), decoded.getLaunchTime());
+        }
+    }
+
+    // same bytes as FieldSerializer, and either side decodes them to the same fields
+    private void assertPacket(Packet packet){
+        byte[] encoded = write(codec, packet);
+        assertArrayEquals(write(reference, packet), encoded);
+
+        assertPacket(packet, (Packet) read(codec, encoded));
+        assertPacket(packet, (Packet) read(reference, encoded));
+    }
+
+    private static void assertPacket(Packet expected, Packet actual){
+        assertEquals(expected.getSequenceNumber(), actual.getSequenceNumber());
+        assertEquals(expected.getServerSequence(), actual.getServerSequence());
+        assertEquals(expected.getLaunchTime(), actual.getLaunchTime());
+        assertEquals(expected.getDropChance(), actual.getDropChance(), 0f);
+        assertEquals(expected.getMessage(), actual.getMessage());
+    }
+
+    private static byte[] write(Kryo kryo, Object object){
+        Output output = new Output(256, -1);
+        kryo.writeClassAndObject(output, object);
+        return output.toBytes();
+    }
+
+    private static Object read(Kryo kryo, byte[] encoded){
+        return kryo.readClassAndObject(new Input(encoded));
+    }
+}
@@ -0,0 +1,142 @@
+package Hydra.Network;
+
+import Hydra.Packets.FragmentPacket;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ReassemblerTest {
+
+    private int sequence = 0;
+
+    @Test
+    public void singleFragmentIsTheMessage(){
+        Reassembler reassembler = new Reassembler(4, 100);
+
+        assertEquals("whole", reassembler.add(fragment(1, 0, 1, "whole")));
+        assertEquals(1, reassembler.getCompleted());
+        assertEquals(5, reassembler.getCompletedChars());
+        assertEquals(0, reassembler.getPartial());
+    }
+
+    @Test
+    public void fragmentsInAnyOrder(){
+        Reassembler reassembler = new Reassembler(4, 100);
+
+        assertNull(reassembler.add(fragment(1, 2, 3, "ghi")));
+        assertNull(reassembler.add(fragment(1, 0, 3, "abc")));
+        assertEquals(1, reassembler.getPartial());
+        assertEquals("abcdefghi", reassembler.add(fragment(1, 1, 3, "def")));
+
+        assertEquals(1, reassembler.getCompleted());
+        assertEquals(9, reassembler.getCompletedChars());
+        assertEquals(0, reassembler.getPartial());
+    }
+
+    @Test
+    public void interleavedMessages(){
+        Reassembler reassembler = new Reassembler(4, 100);
+
+        assertNull(reassembler.add(fragment(1, 0, 2, "a1")));
+        assertNull(reassembler.add(fragment(2, 0, 2, "b1")));
+        assertEquals("b1b2", reassembler.add(fragment(2, 1, 2, "b2")));
+        assertEquals("a1a2", reassembler.add(fragment(1, 1, 2, "a2")));
+    }
+
+    @Test
+    public void duplicatesAndLateRetransmissionsAreIgnored(){
+        Reassembler reassembler = new Reassembler(4, 100);
+
+        assertNull(reassembler.add(fragment(1, 0, 2, "ab")));
+        assertNull(reassembler.add(fragment(1, 0, 2, "ab")));
+        assertEquals("abcd", reassembler.add(fragment(1, 1, 2, "cd")));
+
+        // the message is done, a retransmitted fragment must not start it again
+        assertNull(reassembler.add(fragment(1, 0, 2, "ab")));
+        assertNull(reassembler.add(fragment(1, 1, 2, "cd")));
+        assertEquals(0, reassembler.getPartial());
+        assertEquals(1, reassembler.getCompleted());
+    }
+
+    @Test
+    public void invalidFragmentsAreIgnored(){
+        Reassembler reassembler = new Reassembler(4, 100);
+
+        assertNull(reassembler.add(fragment(1, 0, 2, null)));
+        assertNull(reassembler.add(fragment(1, 2, 2, "x")));
+        assertNull(reassembler.add(fragment(1, -1, 2, "x")));
+        assertNull(reassembler.add(fragment(1, 0, 0, "x")));
+        assertNull(reassembler.add(fragment(1, 0, 101, "x")));
+        assertEquals(0, reassembler.getPartial());
+
+        // a count which disagrees with the partial message is not part of it
+        assertNull(reassembler.add(fragment(2, 0, 2, "ab")));
+        assertNull(reassembler.add(fragment(2, 1, 3, "cd")));
+        assertEquals("abef", reassembler.add(fragment(2, 1, 2, "ef")));
+    }
+
+    @Test
+    public void oldestPartialMessageMakesRoom(){
+        Reassembler reassembler = new Reassembler(2, 100);
+
+        assertNull(reassembler.add(fragment(1, 0, 2, "a")));
+        assertNull(reassembler.add(fragment(2, 0, 2, "b")));
+        assertNull(reassembler.add(fragment(3, 0, 2, "c")));
+
+        assertEquals(2, reassembler.getPartial());
+        assertEquals(1, reassembler.getDropped());
+
+        // the dropped message is finished, its remaining fragments are ignored
+        assertNull(reassembler.add(fragment(1, 1, 2, "a")));
+        assertEquals("bb", reassembler.add(fragment(2, 1, 2, "b")));
+        assertEquals("cc", reassembler.add(fragment(3, 1, 2, "c")));
+    }
+
+    @Test
+    public void charactersAreBounded(){
+        Reassembler reassembler = new Reassembler(4, 10);
+
+        assertNull(reassembler.add(fragment(1, 0, 2, "aaaa")));
+        assertNull(reassembler.add(fragment(2, 0, 2, "bbbb")));
+
+        // does not fit next to both, the oldest other message goes
+        assertNull(reassembler.add(fragment(3, 0, 2, "cccc")));
+        assertEquals(1, reassembler.getDropped());
+        assertEquals(2, reassembler.getPartial());
+        assertEquals("bbbbbb", reassembler.add(fragment(2, 1, 2, "bb")));
+    }
+
+    @Test
+    public void messageLargerThanTheBufferIsDropped(){
+        Reassembler reassembler = new Reassembler(4, 10);
+
+        assertNull(reassembler.add(fragment(1, 0, 2, "aaaaaa")));
+        assertNull(reassembler.add(fragment(1, 1, 2, "aaaaaa")));
+
+        assertEquals(1, reassembler.getDropped());
+        assertEquals(0, reassembler.getPartial());
+        assertEquals(0, reassembler.getCompleted());
+    }
+
+    @Test
+    public void clearForgetsEverything(){
+        Reassembler reassembler = new Reassembler(4, 100);
+
+        assertEquals("done", reassembler.add(fragment(1, 0, 1, "done")));
+        assertNull(reassembler.add(fragment(2, 0, 2, "ab")));
+        reassembler.clear();
+
+        assertEquals(0, reassembler.getPartial());
+        assertEquals(0, reassembler.getCompleted());
+
+        // message IDs start over with the next simulation
+        assertEquals("again", reassembler.add(fragment(1, 0, 1, "again")));
+        assertNull(reassembler.add(fragment(2, 1, 2, "cd")));
+        assertEquals("abcd", reassembler.add(fragment(2, 0, 2, "ab")));
+    }
+
+    private FragmentPacket fragment(int messageId, int index, int count, String slice){
+        return new FragmentPacket(sequence++, 0, slice, 0f, messageId, index, count);
+    }
+}
@@ -0,0 +1,111 @@
+package Hydra.Packets;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PacketWindowTest {
+
+    // a full window has to take new packets again once its oldest ones were acknowledged
+    @Test
+    public void fullWindowReopensAfterAcknowledgements(){
+        PacketWindow window = new PacketWindow(8);
+        for (int sequence = 0; sequence < 8; sequence++)
+            assertTrue(window.add(packet(sequence)));
+
+        assertTrue(window.isFull());
+        assertFalse(window.add(packet(8)));
+
+        assertTrue(window.remove(0));
+        assertTrue(window.remove(1));
+
+        assertFalse(window.isFull());
+        assertTrue(window.add(packet(8)));
+        assertTrue(window.add(packet(9)));
+        assertTrue(window.isFull());
+    }
+
+    // a gap at the front keeps the window full however much behind it was acknowledged
+    @Test
+    public void oldestOutstandingPacketHoldsTheWindow(){
+        PacketWindow window = new PacketWindow(4);
+        for (int sequence = 0; sequence < 4; sequence++)
+            window.add(packet(sequence));
+
+        window.remove(1);
+        window.remove(2);
+        window.remove(3);
+        assertTrue(window.isFull());
+
+        window.remove(0);
+        assertFalse(window.isFull());
+        assertEquals(0, window.getSize());
+    }
+
+    @Test
+    public void spanLimitsTheWindow(){
+        PacketWindow window = new PacketWindow(16);
+        for (int sequence = 0; sequence < 4; sequence++)
+            window.add(packet(sequence));
+
+        assertTrue(window.isFull(4));
+        assertFalse(window.isFull(5));
+        assertFalse(window.isFull());
+    }
+
+    @Test
+    public void cutBelowRemovesLowerSequences(){
+        PacketWindow window = new PacketWindow(8);
+        for (int sequence = 10; sequence < 15; sequence++)
+            window.add(packet(sequence));
+
+        ArrayList<Integer> removed = new ArrayList<>();
+        assertEquals(3, window.cutBelow(13, p -> removed.add(p.getSequenceNumber())));
+        assertEquals(3, removed.size());
+        assertEquals(10, (int) removed.get(0));
+        assertEquals(12, (int) removed.get(2));
+
+        assertNull(window.get(12));
+        assertEquals(13, window.get(13).getSequenceNumber());
+        assertEquals(0, window.cutBelow(13));
+        assertEquals(13, window.first());
+    }
+
+    @Test
+    public void acknowledgeClearsFlaggedSequences(){
+        PacketWindow window = new PacketWindow(8);
+        for (int sequence = 0; sequence < 6; sequence++)
+            window.add(packet(sequence));
+
+        // 5, and 4 and 2 as bits 0 and 2
+        assertEquals(3, window.acknowledge(5, 0b101));
+        assertEquals(3, window.getSize());
+        assertTrue(window.contains(3) && window.get(3) != null);
+        assertNull(window.get(4));
+
+        // already acknowledged ones are not counted again
+        assertEquals(1, window.acknowledge(5, 0b111));
+    }
+
+    @Test
+    public void sequencesMayWrapAroundTheIntRange(){
+        PacketWindow window = new PacketWindow(4);
+        int start = Integer.MAX_VALUE - 1;
+        for (int i = 0; i < 4; i++)
+            assertTrue(window.add(packet(start + i)));
+
+        assertTrue(window.isFull());
+        assertEquals(2, window.cutBelow(Integer.MIN_VALUE));
+        assertEquals(Integer.MIN_VALUE, window.first());
+        assertTrue(window.add(packet(start + 4)));
+    }
+
+    private static Packet packet(int sequence){
+        return new Packet(sequence, 0, null, 0f);
+    }
+}